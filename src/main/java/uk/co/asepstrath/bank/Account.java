@@ -4,7 +4,7 @@ import java.math.BigDecimal;
 import java.util.UUID;
 
 public class Account {
-    private BigDecimal balance;
+    private long balancePence;
     private final UUID id;
     private String name;
     private boolean roundUpEnabled;
@@ -13,7 +13,7 @@ public class Account {
     public Account(UUID id, String name, double balance, boolean roundUpEnabled, String postcode) { 
         this.id = id;
         this.name = name;
-        this.balance = BigDecimal.valueOf(balance);
+        this.balancePence = Money.ofPounds(balance);
         this.roundUpEnabled = roundUpEnabled;
         this.postcode = postcode;
     }
@@ -22,26 +22,38 @@ public class Account {
         this(id, name, balance, false, postcode);
     }
 
+    // Used when loading from the database, where balances are already stored in pence
+    public static Account ofPence(UUID id, String name, long balancePence, boolean roundUpEnabled, String postcode) {
+        Account account = new Account(id, name, 0, roundUpEnabled, postcode);
+        account.balancePence = balancePence;
+        return account;
+    }
+
 
     public void deposit(double amount) {
-        balance = balance.add(BigDecimal.valueOf(amount));
+        balancePence += Money.ofPounds(amount);
     }
 
     public void withdraw(double amount) {
-        BigDecimal amountInBigDecimal = BigDecimal.valueOf(amount);
-        if (amountInBigDecimal.compareTo(balance) > 0) {
+        long amountPence = Money.ofPounds(amount);
+        if (amountPence > balancePence) {
             throw new ArithmeticException("Insufficient funds");
         }
-        balance = balance.subtract(amountInBigDecimal);
+        balancePence -= amountPence;
     }
 
+    // Exact pounds and pence (scale 2), straight from the stored pence without a double in between
     public BigDecimal getBalance() {
-        return balance;
+        return Money.toBigDecimal(balancePence);
+    }
+
+    public long getBalancePence() {
+        return balancePence;
     }
 
     @Override
     public String toString() {
-        return "Name: " + name + " | Balance: " + balance;
+        return "Name: " + name + " | Balance: " + getBalance();
     }
 
     public String getName() {
@@ -53,7 +65,11 @@ public class Account {
     }
 
     public void setBalance(double balance) {
-        this.balance = BigDecimal.valueOf(balance);
+        this.balancePence = Money.ofPounds(balance);
+    }
+
+    public void setBalancePence(long balancePence) {
+        this.balancePence = balancePence;
     }
 
     public boolean isRoundUpEnabled() {
@@ -1,31 +1,32 @@
 package uk.co.asepstrath.bank;
 
 import io.jooby.netty.NettyServer;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 import io.jooby.Jooby;
+import io.jooby.MediaType;
 import io.jooby.SessionStore;
+import io.jooby.StatusCode;
 import io.jooby.handlebars.HandlebarsModule;
 import io.jooby.helper.UniRestExtension;
 import io.jooby.hikari.HikariModule;
+import com.zaxxer.hikari.HikariDataSource;
 import org.slf4j.Logger;
 import javax.sql.DataSource;
 import java.io.*;
 import java.util.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import java.net.HttpURLConnection;
-import java.net.URL;
 
 
 public class App extends Jooby {
@@ -33,6 +34,28 @@ public class App extends Jooby {
     public static final List<Account> accounts = new ArrayList<>(); // Temporary account data
     public static final List<Transaction> transactions = new ArrayList<>(); // Temporary transaction data
 
+    private static final int DEFAULT_TRANSACTION_PAGES = 154;
+    private static final int DEFAULT_FETCH_CONCURRENCY = 8;
+    private static final int DEFAULT_BUSINESS_RELOAD_SECONDS = 30;
+    private static final int DEFAULT_SYNC_SECONDS = 300;
+
+    private final TransactionPageParser transactionParser = new TransactionPageParser(getLog());
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "scotbank-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private BusinessRegistry businesses;
+    private PasswordHasher passwordHasher;
+    private SpendingLeaderboard leaderboard;
+    private UpstreamClient upstream;
+    private DataSource dataSource;
+    private QueryStats queryStats;
+    private long dataLoadedMillis; // when the data loaded at startup was fetched from upstream
+    private final Metrics metrics = new Metrics();
+    private final IngestionMetrics ingestionMetrics = IngestionMetrics.shared();
+    private final StartupStages startupStages = new StartupStages(getLog());
+
     {
         /*
         This section is used for setting up the Jooby Framework modules
@@ -52,15 +75,82 @@ public class App extends Jooby {
         /*
         Now we set up our controllers and their dependencies
          */
-        DataSource ds = require(DataSource.class);
         Logger log = getLog();
 
-        mvc(new BankController_(ds, log));
+        String businessesFile = stringSetting("businesses.file", "");
+        businesses = new BusinessRegistry(businessesFile.isEmpty() ? null : Path.of(businessesFile), log);
+
+        // BCrypt work runs on its own bounded pool so a burst of logins can't starve other requests
+        passwordHasher = new PasswordHasher(
+                Math.max(1, intSetting("security.hashThreads", PasswordHasher.defaultThreads())),
+                intSetting("security.hashQueue", PasswordHasher.DEFAULT_QUEUE_CAPACITY),
+                intSetting("security.bcryptCost", PasswordHasher.DEFAULT_COST), log);
+
+        // Every upstream call goes through this one client, which pools connections and caches the token
+        upstream = new UpstreamClient(stringSetting("upstream.baseUrl", UpstreamClient.DEFAULT_BASE_URL),
+                "scotbank", "this1password2is3not4secure",
+                intSetting("upstream.connectTimeoutMillis", UpstreamClient.DEFAULT_CONNECT_TIMEOUT_MILLIS),
+                intSetting("upstream.requestTimeoutMillis", UpstreamClient.DEFAULT_REQUEST_TIMEOUT_MILLIS),
+                intSetting("upstream.attempts", UpstreamClient.DEFAULT_ATTEMPTS), log);
+
+        leaderboard = new SpendingLeaderboard(intSetting("leaderboard.size", SpendingLeaderboard.DEFAULT_SIZE),
+                intSetting("leaderboard.windowDays", 0));
+
+        /*
+        Prometheus metrics on /metrics. Each subsystem keeps its own counters and is only read on a scrape;
+        the filter times every route registered after it
+         */
+        DataSource pool = require(DataSource.class);
+        if (pool instanceof HikariDataSource hikari) {
+            HikariPoolMetrics poolMetrics = new HikariPoolMetrics();
+            hikari.setMetricsTrackerFactory(poolMetrics);
+            metrics.register(poolMetrics);
+        }
+
+        // Everything else uses the pool through this wrapper, which times every SQL statement
+        queryStats = new QueryStats(log, intSetting("database.slowQueryMillis", (int) QueryStats.DEFAULT_SLOW_QUERY_MILLIS));
+        dataSource = InstrumentedDataSource.wrap(pool, queryStats);
+        metrics.register(queryStats);
+        metrics.register(passwordHasher);
+        metrics.register(TransferMetrics.shared());
+        metrics.register(ingestionMetrics);
+        metrics.register(upstream);
+        get("/metrics", ctx -> {
+            ctx.setResponseType(MediaType.text);
+            return metrics.scrape();
+        });
+
+        // Liveness and readiness for load balancers and orchestrators, answered even while the startup load runs
+        get("/health/live", ctx -> {
+            ctx.setResponseType(MediaType.text);
+            return "live";
+        });
+        get("/health/ready", ctx -> {
+            ctx.setResponseType(MediaType.text);
+            ctx.setResponseCode(startupStages.isReady() ? StatusCode.OK : StatusCode.SERVICE_UNAVAILABLE);
+            return startupStages.report();
+        });
+        metrics.register(startupStages);
+        use(new MetricsFilter(metrics));
+
+        // Every route below answers 503 until the startup load has finished
+        use(new ReadinessFilter(startupStages));
+
+        // Resolves the signed-in user from the session before any /scotbank route runs
+        use(new AuthFilter());
+        mvc(new BankController_(dataSource, log, businesses, passwordHasher, leaderboard));
+
+        // Admin only like the controller's admin pages: slowest statements since startup, ?by=total|mean|max&limit=n
+        get("/scotbank/adminQueries", ctx -> {
+            ctx.setResponseType(MediaType.text);
+            return queryStats.report(QueryStats.Order.valueOf(ctx.query("by").value("total").toUpperCase()),
+                    ctx.query("limit").intValue(20));
+        });
 
         /*
         Finally we register our application lifecycle methods
          */
-        onStarted(() -> onStart());
+        onStarted(() -> startInBackground());
         onStop(() -> onStop());
     }
 
@@ -76,174 +166,219 @@ public class App extends Jooby {
     public void onStart() {
         Logger log = getLog();
         log.info("Starting Up...");
-        String accountsData = null;
-        try {
-            accountsData = getAccountInformation(getOAuth2Token());
-        } catch (IOException e) {
-            e.printStackTrace();
+        long start = System.nanoTime();
+        String snapshotFile = stringSetting("snapshot.file", "");
+        Path snapshot = snapshotFile.isEmpty() ? null : Path.of(snapshotFile);
+        boolean upstreamEnabled = booleanSetting("upstream.enabled", true);
+        if (!upstreamEnabled) {
+            // Offline: whoever started the app has already filled accounts and transactions (e.g. the load test)
+            log.info("Upstream disabled, loading {} accounts and {} transactions from memory", accounts.size(), transactions.size());
         }
-        parseAccountsData(accountsData);
-        fetchTransactions();
-        setupDatabase(log);
-    }
+        boolean fetchUpstream = upstreamEnabled && (snapshot == null || !loadSnapshot(snapshot, log));
+        if (fetchUpstream) {
+            dataLoadedMillis = System.currentTimeMillis();
+        }
+        DatabaseController dbController = createDatabaseController(log);
 
-    private static String getOAuth2Token() throws IOException {
-        String clientId = "scotbank";
-        String clientSecret = "this1password2is3not4secure";
-        String auth = clientId + ":" + clientSecret;
-        String encodedAuth = Base64.getEncoder().encodeToString(auth.getBytes());
-
-        URL url = new URL("https://api.asep-strath.co.uk/oauth2/token");
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Authorization", "Basic " + encodedAuth);
-        connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-        connection.setDoOutput(true);
-
-        String urlParameters = "grant_type=client_credentials";
-        try (OutputStream os = connection.getOutputStream()) {
-            byte[] input = urlParameters.getBytes("utf-8");
-            os.write(input, 0, input.length);
+        /*
+        The upstream fetches run alongside the schema and businesses load; each table load waits for the
+        schema, and the replay waits for all of them. Each stage's progress is on /health/ready.
+         */
+        AtomicBoolean fetchedEverything = new AtomicBoolean();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Boolean> schema = executor.submit(() -> startupStages.run(StartupStages.Stage.SCHEMA, dbController::createSchema));
+            Future<Boolean> businessesLoaded = executor.submit(() -> startupStages.run(StartupStages.Stage.BUSINESSES, () -> {
+                awaitSchema(schema);
+                dbController.loadBusinesses();
+            }));
+            Future<Boolean> accountsLoaded = executor.submit(() -> startupStages.run(StartupStages.Stage.ACCOUNTS, () -> {
+                if (fetchUpstream) {
+                    accounts.addAll(fetchAccounts());
+                }
+                awaitSchema(schema);
+                dbController.loadAccounts();
+                createDefaultUsers(dbController);
+            }));
+            Future<Boolean> transactionsLoaded = executor.submit(() -> startupStages.run(StartupStages.Stage.TRANSACTIONS, () -> {
+                if (fetchUpstream && fetchTransactions()) {
+                    fetchedEverything.set(true);
+                }
+                awaitSchema(schema);
+                dbController.loadTransactions();
+            }));
+            executor.submit(() -> startupStages.run(StartupStages.Stage.REPLAY, () -> {
+                // Carries on with whatever did load, as a partial fetch always has
+                businessesLoaded.get();
+                accountsLoaded.get();
+                transactionsLoaded.get();
+                awaitSchema(schema);
+                dbController.replayTransactions();
+            }));
         }
+        ingestionMetrics.complete();
+        log.info("Startup load finished in {} ms{}", (System.nanoTime() - start) / 1_000_000,
+                System.lineSeparator() + startupStages.report());
 
-        int responseCode = connection.getResponseCode();
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            try (Scanner scanner = new Scanner(connection.getInputStream(), "UTF-8")) {
-                String responseBody = scanner.useDelimiter("\\A").next();
-                return parseAccessToken(responseBody);
-            }
-        } else {
-            throw new IOException("Failed to fetch OAuth2 token, response code: " + responseCode);
+        startBackgroundTasks(dbController, log);
+
+        // Only a complete fetch is worth restarting from
+        if (snapshot != null && fetchedEverything.get() && !accounts.isEmpty()) {
+            writeSnapshot(snapshot, log);
         }
     }
 
-    private static String parseAccessToken(String responseBody) {
-        int startIndex = responseBody.indexOf("\"access_token\":\"") + 16;
-        int endIndex = responseBody.indexOf("\"", startIndex);
-        return responseBody.substring(startIndex, endIndex);
+    // Runs onStart on its own thread once the server is listening; until it is done ReadinessFilter answers 503
+    private void startInBackground() {
+        Thread startup = new Thread(() -> {
+            try {
+                onStart();
+            } catch (RuntimeException e) {
+                getLog().error("Startup failed", e);
+            }
+        }, "scotbank-startup");
+        startup.start();
     }
 
-    private static String getAccountInformation(String token) throws IOException {
-        URL url = new URL("https://api.asep-strath.co.uk/api/accounts?include=,postcode");
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
-        connection.setRequestProperty("Authorization", "Bearer " + token);
-        connection.setRequestProperty("Accept", "application/json");
-
-        int responseCode = connection.getResponseCode();
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            try (InputStream is = connection.getInputStream();
-                 Scanner scanner = new Scanner(is, "UTF-8")) {
-                String responseBody = scanner.useDelimiter("\\A").next();
-                return responseBody;
-            }
-        } else {
-            throw new IOException("Failed to fetch account information, response code: " + responseCode);
+    private static void awaitSchema(Future<Boolean> schema) throws Exception {
+        if (!schema.get()) {
+            throw new IllegalStateException("the schema could not be created");
         }
     }
 
-    private static void parseAccountsData(String data) {
-        JsonReader jsonReader = Json.createReader(new StringReader(data));
-        JsonArray jsonArray = jsonReader.readArray();
-        jsonReader.close();
-
-        for (JsonObject jsonObject : jsonArray.getValuesAs(JsonObject.class)) {
-            UUID id = UUID.fromString(jsonObject.getString("id"));
-            accounts.add(new Account(id, jsonObject.getString("name"), jsonObject.getJsonNumber("startingBalance").doubleValue(), false, jsonObject.getString("postcode")));
+    /*
+    Fills accounts and transactions from the snapshot file if it was taken within snapshot.maxAgeMinutes,
+    in place of the upstream fetch. Returns false (and the caller fetches) if it is missing, stale or unreadable.
+     */
+    private boolean loadSnapshot(Path snapshot, Logger log) {
+        int maxAgeMinutes = intSetting("snapshot.maxAgeMinutes", 0);
+        long created = StartupSnapshot.createdMillis(snapshot);
+        if (maxAgeMinutes <= 0 || created < 0 || System.currentTimeMillis() - created > TimeUnit.MINUTES.toMillis(maxAgeMinutes)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            StartupSnapshot.Contents contents = StartupSnapshot.read(snapshot);
+            accounts.addAll(contents.getAccounts());
+            transactions.addAll(contents.getTransactions());
+            dataLoadedMillis = created;
+        } catch (IOException e) {
+            log.warn("Could not read snapshot " + snapshot + ", fetching from upstream instead", e);
+            accounts.clear();
+            transactions.clear();
+            return false;
         }
+        log.info("Loaded {} accounts and {} transactions from snapshot {} ({} minutes old) in {} ms", accounts.size(),
+                transactions.size(), snapshot, (System.currentTimeMillis() - created) / 60_000, (System.nanoTime() - start) / 1_000_000);
+        return true;
     }
 
-
-    private void fetchTransactions() {
+    private void writeSnapshot(Path snapshot, Logger log) {
+        long start = System.nanoTime();
         try {
-            for (int i = 0; i < 154; i++) {
-                String urlString = "https://api.asep-strath.co.uk/api/transactions?page=" + i;
-                URL url = new URL(urlString);
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-
-                // Read the response body
-                String responseBody = new Scanner(connection.getInputStream()).useDelimiter("\\A").next();
-                processTransactionPage(responseBody, i);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("Error parsing XML: " + e.getMessage());
+            StartupSnapshot.write(snapshot, accounts, transactions, System.currentTimeMillis());
+            log.info("Wrote snapshot {} ({} bytes) in {} ms", snapshot, Files.size(snapshot), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            log.error("Could not write snapshot " + snapshot, e);
         }
     }
 
-    private void processTransactionPage(String responseBody, int pageNumber) throws Exception {
-        // Parse the XML
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document document = builder.parse(new InputSource(new StringReader(responseBody)));
-
-        // Normalize the XML structure
-        document.getDocumentElement().normalize();
-
-        // Get the root <pageResult> element
-        Element pageResult = document.getDocumentElement();
+    private List<Account> fetchAccounts() throws IOException, InterruptedException {
+        return upstream.get("api/accounts?include=,postcode", App::parseAccounts);
+    }
 
-        // Get all <results> elements under <pageResult>
-        NodeList resultsList = pageResult.getElementsByTagName("results");
-        if (resultsList.getLength() == 0) {
-            return; // Skip to the next page
+    private static List<Account> parseAccounts(InputStream body) {
+        JsonArray jsonArray;
+        try (JsonReader jsonReader = Json.createReader(body)) {
+            jsonArray = jsonReader.readArray();
         }
 
-        processTransactionResults(resultsList, pageNumber);
+        List<Account> parsed = new ArrayList<>(jsonArray.size());
+        for (JsonObject jsonObject : jsonArray.getValuesAs(JsonObject.class)) {
+            UUID id = UUID.fromString(jsonObject.getString("id"));
+            parsed.add(new Account(id, jsonObject.getString("name"), jsonObject.getJsonNumber("startingBalance").doubleValue(), false, jsonObject.getString("postcode")));
+        }
+        return parsed;
     }
 
-    private void processTransactionResults(NodeList resultsList, int pageNumber) {
-        // Iterate through <results> elements
-        for (int x = 0; x < resultsList.getLength(); x++) {
-            Node node = resultsList.item(x);
 
-            // Check if the <results> element has the correct type
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
-                Element element = (Element) node;
+    /*
+    Transaction pages are fetched on virtual threads, with at most upstream.fetchConcurrency requests
+    in flight at once. Each page is parsed into its own list and the lists are merged in page order,
+    so the database always sees the same ordering regardless of which page finished first.
+    Setting the concurrency to 1 fetches the pages one at a time.
+    Returns false if any page could not be fetched.
+     */
+    private boolean fetchTransactions() {
+        Logger log = getLog();
+        int pages = intSetting("upstream.transactionPages", DEFAULT_TRANSACTION_PAGES);
+        int concurrency = Math.max(1, intSetting("upstream.fetchConcurrency", DEFAULT_FETCH_CONCURRENCY));
+        long start = System.nanoTime();
+        ingestionMetrics.pagesPlanned(pages);
+        boolean complete = true;
+
+        Semaphore permits = new Semaphore(concurrency);
+        List<Future<List<Transaction>>> results = new ArrayList<>(pages);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < pages; i++) {
+                int pageNumber = i;
+                results.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        List<Transaction> page = fetchTransactionPage(pageNumber, log);
+                        ingestionMetrics.pageFetched(page.size());
+                        return page;
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
 
-                // Check if the xsi:type attribute is "transactionModel"
-                String typeAttribute = element.getAttribute("xsi:type");
-                if ("transactionModel".equals(typeAttribute)) {
-                    extractAndAddTransaction(element, pageNumber);
+            // Merge in page order so the resulting list is deterministic
+            for (int i = 0; i < pages; i++) {
+                try {
+                    transactions.addAll(results.get(i).get());
+                } catch (ExecutionException e) {
+                    complete = false;
+                    ingestionMetrics.pageFailed();
+                    log.error("Error fetching transaction page " + i, e.getCause());
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while fetching transactions", e);
+            complete = false;
         }
-    }
 
-    private void extractAndAddTransaction(Element element, int pageNumber) {
-        try {
-            // Extract transaction data with null checks
-            Node idNode = element.getElementsByTagName("id").item(0);
-            Node fromNode = element.getElementsByTagName("from").item(0);
-            Node toNode = element.getElementsByTagName("to").item(0);
-            Node amountNode = element.getElementsByTagName("amount").item(0);
-            Node timestampNode = element.getElementsByTagName("timestamp").item(0);
-            Node typeNode = element.getElementsByTagName("type").item(0);
-
-            // Get text content of each field
-            UUID id = UUID.fromString(idNode.getTextContent());
-            String from = fromNode != null ? fromNode.getTextContent() : null;
-            String to = toNode != null ? toNode.getTextContent() : null;
-            double amount = Double.parseDouble(amountNode.getTextContent());
-            String date = timestampNode.getTextContent();
-            String type = typeNode.getTextContent();
-
-            // Add transaction to the list
-            transactions.add(new Transaction(id, amount, date, from, to, type));
-        } catch (Exception e) {
-            System.err.println("Error processing transaction on page " + pageNumber + ": " + e.getMessage());
-        }
+        log.info("Fetched {} transactions from {} pages in {} ms (concurrency {})",
+                transactions.size(), pages, (System.nanoTime() - start) / 1_000_000, concurrency);
+        return complete;
     }
 
-    private void setupDatabase(Logger log) {
-        // Fetch DB Source
-        DataSource ds = require(DataSource.class);
+    private List<Transaction> fetchTransactionPage(int pageNumber, Logger log) throws Exception {
+        long start = System.nanoTime();
+        long[] firstByte = new long[1];
+        // Parse straight off the response stream
+        List<Transaction> pageTransactions = upstream.get("api/transactions?page=" + pageNumber, body -> {
+            firstByte[0] = System.nanoTime();
+            return transactionParser.parse(body, pageNumber);
+        });
+        log.info("Transaction page {}: {} transactions, first byte {} ms, total {} ms", pageNumber, pageTransactions.size(),
+                (firstByte[0] - start) / 1_000_000, (System.nanoTime() - start) / 1_000_000);
+        return pageTransactions;
+    }
 
-        // Create Database Controller and setup the database
-        DatabaseController dbController = new DatabaseController(ds, log);
-        dbController.setupDatabase();
+    private DatabaseController createDatabaseController(Logger log) {
+        DatabaseController dbController = new DatabaseController(dataSource, log, businesses);
+        dbController.setBatchSize(intSetting("database.batchSize", DatabaseController.DEFAULT_BATCH_SIZE));
+        dbController.setReplayMode(DatabaseController.ReplayMode.valueOf(
+                stringSetting("database.replayMode", DatabaseController.ReplayMode.MEMORY.name()).toUpperCase()));
+        dbController.setCsvReadBusinesses(booleanSetting("database.businessesCsvRead", false));
+        dbController.setPasswordHasher(passwordHasher);
+        dbController.setLeaderboard(leaderboard);
+        return dbController;
+    }
 
+    private static void createDefaultUsers(DatabaseController dbController) {
         // creating test user connected to already existing account from api
         dbController.createUser("test@scotbank.com", "Miss Lavina Waelchi", "test", "user",
                 UUID.fromString("006274fa-16fd-4a79-968b-df889c4a2e75"));
@@ -252,10 +387,65 @@ public class App extends Jooby {
         null);
     }
 
+    private void startBackgroundTasks(DatabaseController dbController, Logger log) {
+        // Keep the Businesses table in step with the CSV when it changes
+        businesses.addReloadListener(dbController::reloadBusinesses);
+        int reloadSeconds = intSetting("businesses.reloadSeconds", DEFAULT_BUSINESS_RELOAD_SECONDS);
+        if (reloadSeconds > 0) {
+            scheduler.scheduleWithFixedDelay(businesses::reloadIfChanged, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+        }
+
+        startUpstreamSync(dbController, log);
+    }
+
+    /*
+    Picks up upstream records added since startup every upstream.syncSeconds (0 disables it). Runs on the
+    same single scheduler thread as the businesses reload, so the two never overlap.
+     */
+    private void startUpstreamSync(DatabaseController dbController, Logger log) {
+        int syncSeconds = intSetting("upstream.syncSeconds", DEFAULT_SYNC_SECONDS);
+        if (!booleanSetting("upstream.enabled", true) || syncSeconds <= 0) {
+            return;
+        }
+        UpstreamSync.Source source = new UpstreamSync.Source() {
+            @Override
+            public List<Account> fetchAccounts() throws Exception {
+                return App.this.fetchAccounts();
+            }
+
+            @Override
+            public List<Transaction> fetchTransactionPage(int page) throws Exception {
+                return App.this.fetchTransactionPage(page, log);
+            }
+        };
+        UpstreamSync sync = new UpstreamSync(dbController, source,
+                intSetting("upstream.transactionPages", DEFAULT_TRANSACTION_PAGES) - 1, dataLoadedMillis,
+                intSetting("upstream.syncMaxPages", UpstreamSync.DEFAULT_MAX_PAGES), log);
+        metrics.register(sync);
+        scheduler.scheduleWithFixedDelay(sync, syncSeconds, syncSeconds, TimeUnit.SECONDS);
+        log.info("Syncing with upstream every {} seconds from transaction page {}", syncSeconds, sync.getLastPage());
+    }
+
+    private int intSetting(String path, int defaultValue) {
+        return getConfig().hasPath(path) ? getConfig().getInt(path) : defaultValue;
+    }
+
+    private String stringSetting(String path, String defaultValue) {
+        return getConfig().hasPath(path) ? getConfig().getString(path) : defaultValue;
+    }
+
+    private boolean booleanSetting(String path, boolean defaultValue) {
+        return getConfig().hasPath(path) ? getConfig().getBoolean(path) : defaultValue;
+    }
+
     /*
     This function will be called when the application shuts down
      */
     public void onStop() {
         System.out.println("Shutting Down...");
+        scheduler.shutdownNow();
+        if (passwordHasher != null) {
+            passwordHasher.shutdown();
+        }
     }
 }
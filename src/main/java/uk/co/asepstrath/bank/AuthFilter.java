@@ -0,0 +1,40 @@
+package uk.co.asepstrath.bank;
+
+import io.jooby.Route;
+import io.jooby.Session;
+
+import java.util.Set;
+
+/*
+Authentication and authorization for the /scotbank routes.
+Identity comes from the session (see Principal), so handlers don't need any database lookups
+to find out who is calling. Admin pages additionally require the admin role.
+ */
+public class AuthFilter implements Route.Filter {
+
+    private static final String PREFIX = "/scotbank/";
+    private static final String ADMIN_PREFIX = "/scotbank/admin";
+    private static final Set<String> PUBLIC_PATHS = Set.of("/scotbank/login", "/scotbank/signup");
+
+    @Override
+    public Route.Handler apply(Route.Handler next) {
+        return ctx -> {
+            String path = ctx.getRequestPath();
+            if (!path.startsWith(PREFIX) || PUBLIC_PATHS.contains(path)) {
+                return next.apply(ctx);
+            }
+
+            Session session = ctx.sessionOrNull();
+            Principal principal = session == null ? null : Principal.fromSession(session);
+            if (principal == null || (path.startsWith(ADMIN_PREFIX) && !principal.isAdmin())) {
+                if (session != null) {
+                    session.destroy();
+                }
+                return ctx.sendRedirect("/scotbank/login");
+            }
+
+            ctx.setAttribute(Principal.ATTRIBUTE, principal);
+            return next.apply(ctx);
+        };
+    }
+}
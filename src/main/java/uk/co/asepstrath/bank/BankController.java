@@ -1,6 +1,7 @@
 package uk.co.asepstrath.bank;
 
 import io.jooby.Context;
+import io.jooby.MediaType;
 import io.jooby.ModelAndView;
 import io.jooby.StatusCode;
 import io.jooby.annotation.*;
@@ -8,21 +9,69 @@ import io.jooby.exception.StatusCodeException;
 
 import org.slf4j.Logger;
 
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 @Path("/scotbank")
 public class BankController {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_BULK_TRANSFERS = 10_000;
+
     private final DataSource dataSource;
     private final Logger logger;
+    private final BusinessRegistry businesses;
+    private final PasswordHasher passwordHasher;
+    private final SpendingLeaderboard leaderboard;
 
-    public BankController(DataSource ds, Logger log) {
+    public BankController(DataSource ds, Logger log, BusinessRegistry businessRegistry, PasswordHasher hasher, SpendingLeaderboard spendingLeaderboard) {
         dataSource = ds;
         logger = log;
+        businesses = businessRegistry;
+        passwordHasher = hasher;
+        leaderboard = spendingLeaderboard;
+    }
+
+    public BankController(DataSource ds, Logger log, BusinessRegistry businessRegistry) {
+        this(ds, log, businessRegistry, PasswordHasher.defaultHasher(), new SpendingLeaderboard(SpendingLeaderboard.DEFAULT_SIZE, 0));
+    }
+
+    public BankController(DataSource ds, Logger log) {
+        this(ds, log, BusinessRegistry.classpath());
+    }
+
+    private DatabaseController database() {
+        DatabaseController dbController = new DatabaseController(dataSource, logger, businesses);
+        dbController.setPasswordHasher(passwordHasher);
+        dbController.setLeaderboard(leaderboard);
+        return dbController;
+    }
+
+    private static int pageSize(Integer requested) {
+        if (requested == null || requested <= 0) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(requested, MAX_PAGE_SIZE);
+    }
+
+    // Links for the paged admin tables: the next page keeps the sort and size, "first" drops the cursor
+    private static void putPageLinks(Map<String, Object> model, String path, String sort, boolean descending, int size, Page<?> page) {
+        String base = path + "?sort=" + sort + "&order=" + (descending ? "desc" : "asc") + "&size=" + size;
+        model.put("sort", sort);
+        model.put("order", descending ? "desc" : "asc");
+        model.put("firstPage", base);
+        if (page.hasNext()) {
+            model.put("nextPage", base + "&cursor=" + page.getNextCursor());
+        }
     }
 
     @GET("/login")
@@ -41,61 +90,58 @@ public class BankController {
         }
 
 
-        DatabaseController dbController = new DatabaseController(dataSource);
+        DatabaseController dbController = database();
+        String encryptedPassword = dbController.getPasswordFromEmail(email);
 
-        if (dbController.emailExists(email)) {
-            if (dbController.verifyPassword(password, dbController.getPasswordFromEmail(email))) {
-                ctx.session().put("email", email);
+        boolean verified;
+        try {
+            verified = encryptedPassword != null && dbController.verifyPassword(password, encryptedPassword);
+        } catch (RejectedExecutionException e) {
+            throw new StatusCodeException(StatusCode.SERVICE_UNAVAILABLE, "Too many sign-ins right now, please try again.");
+        }
+
+        if (verified) {
+            // Resolve who this is once, every later request reads it from the session
+            Principal principal = dbController.getPrincipalFromEmail(email);
+            if (principal != null) {
+                principal.store(ctx.session());
                 ctx.setResponseCode(StatusCode.OK_CODE);
                 ctx.sendRedirect("/scotbank/dashboard");
                 return null;
-            } else {
-                ctx.sendRedirect("/scotbank/login");
-                return null;
             }
-        } else {
-            ctx.sendRedirect("/scotbank/login");
-            return null;
         }
+        ctx.sendRedirect("/scotbank/login");
+        return null;
     }
 
     @GET("/dashboard")
     public ModelAndView dashboard(Context ctx) {
-        String email = ctx.session().get("email").valueOrNull();
-        if (email == null) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
+        Principal principal = ctx.getAttribute(Principal.ATTRIBUTE);
+        if (principal.isAdmin()) {
+            ctx.sendRedirect("/scotbank/adminDashboard");
             return null;
         }
 
         Map<String, Object> model = new HashMap<>();
-        DatabaseController dbController = new DatabaseController(dataSource);
+        DatabaseController dbController = database();
 
-        if (dbController.getRoleFromEmail(email).equals("admin")) {
-            ctx.sendRedirect("/scotbank/adminDashboard");
-            return null;
-        }
-
-        UUID accountID = dbController.getIDfromEmail(email);
+        UUID accountID = principal.getAccountId();
         List<Transaction> transactions = dbController.getTransactionsById(accountID);
 
+        // Resolve every counterparty in one go rather than one query per transaction
+        Map<String, String> names = dbController.getCounterpartyNames(accountID, transactions);
         for (Transaction transaction : transactions) {
             if (transaction.getFrom() != null) {
-                transaction.setFrom(dbController.getNamefromID(UUID.fromString(transaction.getFrom())));
+                transaction.setFrom(names.get(transaction.getFrom()));
             }
 
             if (transaction.getTo() != null) {
-                if (transaction.getTo().length() <= 3) {
-                    transaction.setTo(dbController.getBusinessName(transaction.getTo()));
-                } else {
-                    transaction.setTo(dbController.getNamefromID(UUID.fromString(transaction.getTo())));
-                }
+                transaction.setTo(names.get(transaction.getTo()));
             }
-                
         }
-        
-        model.put("email", email);
-        model.put("name", dbController.getNamefromID(accountID));
+
+        model.put("email", principal.getEmail());
+        model.put("name", principal.getName());
         model.put("balance", dbController.getBalanceFromID(accountID));
         model.put("id", accountID);
         model.put("transactions", transactions);
@@ -104,18 +150,12 @@ public class BankController {
 
     @GET("/spending")
     public ModelAndView spending(Context ctx) {
-        String email = ctx.session().get("email").valueOrNull();
-        if (email == null) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
-            return null;
-        }
+        Principal principal = ctx.getAttribute(Principal.ATTRIBUTE);
 
         Map<String, Object> model = new HashMap<>();
-        DatabaseController dbController = new DatabaseController(dataSource);
-        UUID accountID = dbController.getIDfromEmail(email);
+        DatabaseController dbController = database();
 
-        List<CategoryAmount> categoryAmounts = dbController.getcategoryandamountspentfromId(accountID);
+        List<CategoryAmount> categoryAmounts = dbController.getcategoryandamountspentfromId(principal.getAccountId());
         model.put("categoryAmounts", categoryAmounts);
         
         return new ModelAndView("spending.hbs", model);
@@ -124,32 +164,29 @@ public class BankController {
 
     @GET("/transfer")
     public ModelAndView transfer(Context ctx) {
-        String email = ctx.session().get("email").valueOrNull();
-        if (email == null) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
-            return null;
-        }
+        Principal principal = ctx.getAttribute(Principal.ATTRIBUTE);
 
         Map<String, Object> model = new HashMap<>();
-        DatabaseController dbController = new DatabaseController(dataSource);
-        UUID accountID = dbController.getIDfromEmail(email);
+        DatabaseController dbController = database();
+        UUID accountID = principal.getAccountId();
 
-        model.put("name", dbController.getNamefromID(accountID));
+        model.put("name", principal.getName());
         model.put("balance", dbController.getBalanceFromID(accountID));
         model.put("id", accountID);
-        model.put("email", email);
+        model.put("email", principal.getEmail());
         return new ModelAndView("transfer.hbs", model);
     }
 
     @POST("/transfer")
-    public ModelAndView handleTransfer(@FormParam String email, @FormParam String to, @FormParam double amount, Context ctx) {
-        if (email == null || to == null || amount <= 0) {
+    public ModelAndView handleTransfer(@FormParam String to, @FormParam double amount, Context ctx) {
+        if (to == null || amount <= 0) {
             throw new StatusCodeException(StatusCode.BAD_REQUEST, "Invalid transfer details.");
         }
 
-        DatabaseController dbController = new DatabaseController(dataSource);
-        UUID fromAccountID = dbController.getIDfromEmail(email);
+        // Always transfer from the signed-in user's own account
+        Principal principal = ctx.getAttribute(Principal.ATTRIBUTE);
+        DatabaseController dbController = database();
+        UUID fromAccountID = principal.getAccountId();
         UUID toAccountID = UUID.fromString(to);
 
         if (fromAccountID == null || toAccountID == null) {
@@ -162,16 +199,22 @@ public class BankController {
             return null;
         }
 
-        if (Double.parseDouble(dbController.getBalanceFromID(fromAccountID)) < amount) {
-            ctx.sendRedirect("/scotbank/dashboard");
-            return null;
+        // The balance check happens inside the debit itself, so concurrent transfers can't overdraw
+        switch (dbController.transferFunds(fromAccountID, toAccountID, Money.ofPounds(amount))) {
+            case COMPLETED:
+                break;
+            case CONFLICT:
+                throw new StatusCodeException(StatusCode.CONFLICT, "The account is busy, please try the transfer again.");
+            case FAILED:
+                throw new StatusCodeException(StatusCode.SERVER_ERROR, "The transfer could not be completed.");
+            default: // insufficient funds or unknown payee
+                ctx.sendRedirect("/scotbank/dashboard");
+                return null;
         }
 
-        dbController.transferFunds(fromAccountID, toAccountID, amount);
-
     Map<String, Object> model = new HashMap<>();
-    model.put("email", email);
-    model.put("name", dbController.getNamefromID(fromAccountID));
+    model.put("email", principal.getEmail());
+    model.put("name", principal.getName());
     model.put("balance", dbController.getBalanceFromID(fromAccountID));
     model.put("id", fromAccountID);
     model.put("transactions", dbController.getTransactionsById(fromAccountID));
@@ -191,10 +234,14 @@ public class BankController {
             ctx.sendRedirect("/scotbank/signup");
             return null;
         }
-        DatabaseController dbController = new DatabaseController(dataSource, logger);
+        DatabaseController dbController = database();
         UUID id = UUID.randomUUID();
 
-        dbController.createUser(email, name, password, "user", id);
+        try {
+            dbController.createUser(email, name, password, "user", id);
+        } catch (RejectedExecutionException e) {
+            throw new StatusCodeException(StatusCode.SERVICE_UNAVAILABLE, "Too many sign-ups right now, please try again.");
+        }
 
         dbController.addAccount(new Account(id, name, 0, false , "EH1 1AA"));
         
@@ -204,65 +251,44 @@ public class BankController {
     }
 
 
-    @GET("/adminDashboard")
-    public ModelAndView adminDashboard(Context ctx) {
-        String email = ctx.session().get("email").valueOrNull();
-        if (email == null) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
-            return null;
-        }
+    // The admin pages below are only reachable by admins, AuthFilter checks the role
 
+    @GET("/adminDashboard")
+    public ModelAndView adminDashboard() {
         Map<String, Object> model = new HashMap<>();
-        DatabaseController dbController = new DatabaseController(dataSource);
-        if (!dbController.getRoleFromEmail(email).equals("admin")) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
-            return null;
-        }
         return new ModelAndView("adminDashboard.hbs", model);
     }
 
     @GET("/adminTransactions")
-    public ModelAndView adminTransactions(Context ctx) {
-        String email = ctx.session().get("email").valueOrNull();
-        if (email == null) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
-            return null;
-        }
+    public ModelAndView adminTransactions(@QueryParam String sort, @QueryParam String order, @QueryParam String cursor, @QueryParam Integer size) {
+        String sortKey = "amount".equals(sort) ? "amount" : "date";
+        boolean descending = !"asc".equals(order);
+        int pageSize = pageSize(size);
 
         Map<String, Object> model = new HashMap<>();
-        DatabaseController dbController = new DatabaseController(dataSource);
-
-        if (!dbController.getRoleFromEmail(email).equals("admin")) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
-            return null;
+        DatabaseController dbController = database();
+        Page<Transaction> page;
+        try {
+            page = dbController.getTransactionsPage(sortKey, descending, cursor, pageSize);
+        } catch (IllegalArgumentException e) {
+            throw new StatusCodeException(StatusCode.BAD_REQUEST, "Invalid page cursor.");
         }
-        List<Transaction> transactions = dbController.getAllTransactions();
 
-        model.put("transactions", transactions);
+        model.put("transactions", page.getItems());
+        putPageLinks(model, "/scotbank/adminTransactions", sortKey, descending, pageSize, page);
         return new ModelAndView("adminTransactions.hbs", model);
     }
 
-    @GET("/adminSanctioned")
-    public ModelAndView adminSanctioned(Context ctx) {
-        String email = ctx.session().get("email").valueOrNull();
-        if (email == null) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
-            return null;
-        }
+    // Every transaction on one page, streamed in chunks straight from the result set
+    @GET("/adminTransactions/all")
+    public Context adminTransactionsAll(Context ctx) throws IOException {
+        return streamTransactionTable(ctx, false, "Transaction History", "Transactions");
+    }
 
+    @GET("/adminSanctioned")
+    public ModelAndView adminSanctioned() {
         Map<String, Object> model = new HashMap<>();
-        DatabaseController dbController = new DatabaseController(dataSource);
-
-        if (!dbController.getRoleFromEmail(email).equals("admin")) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
-            return null;
-        }
+        DatabaseController dbController = database();
         List<Transaction> transactions = dbController.getSanctionedTransactions();
 
         model.put("transactions", transactions);
@@ -270,53 +296,115 @@ public class BankController {
     }
 
 
-    @GET("/adminAccounts")
-    public ModelAndView adminAccounts(Context ctx) {
-        String email = ctx.session().get("email").valueOrNull();
-        if (email == null) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
-            return null;
+    @GET("/adminSanctioned/all")
+    public Context adminSanctionedAll(Context ctx) throws IOException {
+        return streamTransactionTable(ctx, true, "Transaction History", "Sanctioned");
+    }
+
+    private Context streamTransactionTable(Context ctx, boolean sanctionedOnly, String heading, String activePage) throws IOException {
+        ctx.setResponseType(MediaType.html);
+        try (Writer writer = ctx.responseWriter()) {
+            TransactionTableWriter table = new TransactionTableWriter(writer);
+            table.writeHeader(heading, activePage);
+            database().streamTransactions(sanctionedOnly, table::writeRow);
+            table.writeFooter();
         }
+        return ctx;
+    }
 
-        Map<String, Object> model = new HashMap<>();
-        DatabaseController dbController = new DatabaseController(dataSource);
 
-        if (!dbController.getRoleFromEmail(email).equals("admin")) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
-            return null;
+    @GET("/adminAccounts")
+    public ModelAndView adminAccounts(@QueryParam String sort, @QueryParam String order, @QueryParam String cursor, @QueryParam Integer size) {
+        String sortKey = "name".equals(sort) ? "name" : "balance";
+        boolean descending = !"asc".equals(order);
+        int pageSize = pageSize(size);
+
+        Map<String, Object> model = new HashMap<>();
+        DatabaseController dbController = database();
+        Page<Account> page;
+        try {
+            page = dbController.getAccountsPage(sortKey, descending, cursor, pageSize);
+        } catch (IllegalArgumentException e) {
+            throw new StatusCodeException(StatusCode.BAD_REQUEST, "Invalid page cursor.");
         }
-        List<Account> accounts = dbController.getAllAccounts();
 
-        model.put("accounts", accounts);
+        model.put("accounts", page.getItems());
+        putPageLinks(model, "/scotbank/adminAccounts", sortKey, descending, pageSize, page);
         return new ModelAndView("adminAccounts.hbs", model);
     }
 
 
-    @GET("/adminTen")
-    public ModelAndView adminTen(Context ctx) {
-        String email = ctx.session().get("email").valueOrNull();
-        if (email == null) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
-            return null;
+    /*
+    Bulk transfers for payroll and settlement runs. The body is either a JSON array of
+    {"from", "to", "amount"} objects or CSV lines of from,to,amount (amounts in pounds). Everything is
+    applied in a few database transactions, and the response has one result per item in the order sent.
+     */
+    @POST("/adminBulkTransfer")
+    public String adminBulkTransfer(Context ctx) {
+        String body = ctx.body().value("");
+        List<TransferInstruction> instructions;
+        try {
+            instructions = ctx.getRequestType(MediaType.text).matches(MediaType.json)
+                    ? TransferInstruction.parseJson(body)
+                    : TransferInstruction.parseCsv(body);
+        } catch (IllegalArgumentException e) {
+            throw new StatusCodeException(StatusCode.BAD_REQUEST, e.getMessage());
+        }
+        if (instructions.size() > MAX_BULK_TRANSFERS) {
+            throw new StatusCodeException(StatusCode.REQUEST_ENTITY_TOO_LARGE, "At most " + MAX_BULK_TRANSFERS + " transfers per request.");
         }
 
-        Map<String, Object> model = new HashMap<>();
-        DatabaseController dbController = new DatabaseController(dataSource);
+        long start = System.nanoTime();
+        List<DatabaseController.TransferResult> results = database().bulkTransfer(instructions);
 
-        if (!dbController.getRoleFromEmail(email).equals("admin")) {
-            ctx.sendRedirect("/scotbank/login");
-            ctx.session().destroy();
-            return null;
+        int completed = 0;
+        JsonArrayBuilder items = Json.createArrayBuilder();
+        for (int i = 0; i < instructions.size(); i++) {
+            TransferInstruction instruction = instructions.get(i);
+            DatabaseController.TransferResult result = results.get(i);
+            if (result == DatabaseController.TransferResult.COMPLETED) {
+                completed++;
+            }
+            items.add(Json.createObjectBuilder()
+                    .add("index", i)
+                    .add("from", String.valueOf(instruction.getFrom()))
+                    .add("to", String.valueOf(instruction.getTo()))
+                    .add("amount", Money.toBigDecimal(instruction.getAmountPence()))
+                    .add("result", result.name()));
         }
-        List<Account> accounts = dbController.getTopTenBiggestSpenders();
+        logger.info("Bulk transfer: {} of {} completed in {} ms", completed, instructions.size(), (System.nanoTime() - start) / 1_000_000);
+
+        ctx.setResponseType(MediaType.json);
+        return Json.createObjectBuilder()
+                .add("submitted", instructions.size())
+                .add("completed", completed)
+                .add("results", items)
+                .build()
+                .toString();
+    }
 
-        model.put("accounts", accounts);
+    // Recomputes the spending page totals from the full transaction history
+    @POST("/adminRebuildSpending")
+    public String adminRebuildSpending(Context ctx) {
+        int rows = database().rebuildCategorySpend();
+        if (rows < 0) {
+            throw new StatusCodeException(StatusCode.SERVER_ERROR, "Rebuilding the spending totals failed.");
+        }
+        ctx.setResponseType(MediaType.text);
+        return "Rebuilt " + rows + " spending totals\n";
+    }
+
+    // Answered from the in-memory leaderboard, no database work
+    @GET("/adminTen")
+    public ModelAndView adminTen() {
+        Map<String, Object> model = new HashMap<>();
+        model.put("accounts", leaderboard.top());
+        model.put("size", leaderboard.getSize());
+        if (leaderboard.getWindowDays() > 0) {
+            model.put("windowDays", leaderboard.getWindowDays());
+        }
         return new ModelAndView("adminten.hbs", model);
     }
 
 }
 
-
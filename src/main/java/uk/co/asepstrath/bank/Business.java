@@ -0,0 +1,36 @@
+package uk.co.asepstrath.bank;
+
+public class Business {
+    private final String id;
+    private final String name;
+    private final String category;
+    private final boolean sanctioned;
+
+    public Business(String id, String name, String category, boolean sanctioned) {
+        this.id = id;
+        this.name = name;
+        this.category = category;
+        this.sanctioned = sanctioned;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public boolean isSanctioned() {
+        return sanctioned;
+    }
+
+    @Override
+    public String toString() {
+        return "Business ID: " + id + " | Name: " + name + " | Category: " + category + " | Sanctioned: " + sanctioned;
+    }
+}
@@ -0,0 +1,189 @@
+package uk.co.asepstrath.bank;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+In-memory copy of the businesses list (businesses.csv).
+Lookups read a single immutable snapshot, and a reload builds a complete new snapshot before swapping
+it in, so readers never see a half-loaded list. By default the CSV is read from the classpath, which
+also works from the shaded jar; an external file can be given instead so it can be edited in place.
+ */
+public class BusinessRegistry {
+
+    static final String RESOURCE = "/data/businesses.csv";
+
+    private static final class Snapshot {
+        private final Map<String, Business> byId;
+        private final List<Business> all;
+        private final Set<String> sanctionedIds;
+        private final long lastModified;
+
+        private Snapshot(List<Business> businesses, long lastModified) {
+            Map<String, Business> index = new HashMap<>(businesses.size() * 2);
+            Set<String> sanctioned = new HashSet<>();
+            for (Business business : businesses) {
+                index.put(business.getId(), business);
+                if (business.isSanctioned()) {
+                    sanctioned.add(business.getId());
+                }
+            }
+            this.byId = Collections.unmodifiableMap(index);
+            this.all = Collections.unmodifiableList(businesses);
+            this.sanctionedIds = Collections.unmodifiableSet(sanctioned);
+            this.lastModified = lastModified;
+        }
+    }
+
+    // Shared registry backed by the packaged CSV, for callers that aren't handed one
+    private static final class ClasspathHolder {
+        private static final BusinessRegistry INSTANCE = new BusinessRegistry(null, LoggerFactory.getLogger(BusinessRegistry.class));
+    }
+
+    private final Path watchedFile;
+    private final Logger log;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+
+    /*
+    file is the CSV to load, or null to use the packaged classpath copy.
+    The classpath copy can still be reloaded when it is a plain file (e.g. running from target/classes).
+     */
+    public BusinessRegistry(Path file, Logger log) {
+        this.log = log;
+        this.watchedFile = file != null ? file : classpathFile();
+        try {
+            snapshot.set(read());
+        } catch (IOException e) {
+            log.error("Error reading businesses CSV file", e);
+            throw new UncheckedIOException(e);
+        }
+        log.info("Loaded {} businesses", snapshot.get().all.size());
+    }
+
+    public static BusinessRegistry classpath() {
+        return ClasspathHolder.INSTANCE;
+    }
+
+    public Business get(String id) {
+        return id == null ? null : snapshot.get().byId.get(id);
+    }
+
+    public String getName(String id) {
+        Business business = get(id);
+        return business == null ? null : business.getName();
+    }
+
+    public String getCategory(String id) {
+        Business business = get(id);
+        return business == null ? null : business.getCategory();
+    }
+
+    public boolean isSanctioned(String id) {
+        return id != null && snapshot.get().sanctionedIds.contains(id);
+    }
+
+    // The CSV this registry reads, or null when it is the copy packaged inside the jar
+    public Path getFile() {
+        return watchedFile;
+    }
+
+    public List<Business> getAll() {
+        return snapshot.get().all;
+    }
+
+    public Set<String> getSanctionedIds() {
+        return snapshot.get().sanctionedIds;
+    }
+
+    // Listeners run on the reloading thread after the new snapshot is visible
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    public synchronized boolean reloadIfChanged() {
+        if (watchedFile == null) {
+            return false; // packaged inside a jar, it can't change
+        }
+        try {
+            if (Files.getLastModifiedTime(watchedFile).toMillis() == snapshot.get().lastModified) {
+                return false;
+            }
+            snapshot.set(read());
+        } catch (IOException | RuntimeException e) {
+            log.error("Error reloading businesses from " + watchedFile + ", keeping the previous list", e);
+            return false;
+        }
+
+        log.info("Reloaded {} businesses from {}", snapshot.get().all.size(), watchedFile);
+        for (Runnable listener : reloadListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.error("Error notifying business reload listener", e);
+            }
+        }
+        return true;
+    }
+
+    private Snapshot read() throws IOException {
+        long lastModified = watchedFile != null ? Files.getLastModifiedTime(watchedFile).toMillis() : 0;
+        try (InputStream in = watchedFile != null ? Files.newInputStream(watchedFile) : BusinessRegistry.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Businesses CSV not found on the classpath: " + RESOURCE);
+            }
+            return new Snapshot(parse(in), lastModified);
+        }
+    }
+
+    // id,name,category,sanctioned - one business per line, no header
+    private static List<Business> parse(InputStream in) throws IOException {
+        List<Business> businesses = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length < 4) {
+                    throw new IOException("Malformed business line: " + line);
+                }
+                businesses.add(new Business(fields[0].trim(), fields[1].trim(), fields[2].trim(), Boolean.parseBoolean(fields[3].trim())));
+            }
+        }
+        return businesses;
+    }
+
+    private static Path classpathFile() {
+        URL url = BusinessRegistry.class.getResource(RESOURCE);
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Path.of(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+}
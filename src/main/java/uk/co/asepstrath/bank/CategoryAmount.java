@@ -2,11 +2,17 @@ package uk.co.asepstrath.bank;
 
 public class CategoryAmount {
     private String category;
-    private double amount;
+    private long amountPence;
 
     public CategoryAmount(String category, double amount) {
         this.category = category;
-        this.amount = amount;
+        this.amountPence = Money.ofPounds(amount);
+    }
+
+    public static CategoryAmount ofPence(String category, long amountPence) {
+        CategoryAmount categoryAmount = new CategoryAmount(category, 0);
+        categoryAmount.amountPence = amountPence;
+        return categoryAmount;
     }
 
     public String getCategory() {
@@ -18,10 +24,14 @@ public class CategoryAmount {
     }
 
     public double getAmount() {
-        return amount;
+        return Money.toPounds(amountPence);
+    }
+
+    public long getAmountPence() {
+        return amountPence;
     }
 
     public void setAmount(double amount) {
-        this.amount = amount;
+        this.amountPence = Money.ofPounds(amount);
     }
 }
\ No newline at end of file
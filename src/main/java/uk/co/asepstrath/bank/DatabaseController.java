@@ -1,29 +1,97 @@
 package uk.co.asepstrath.bank;
 
-import org.mindrot.jbcrypt.BCrypt;
 import org.slf4j.Logger;
 
 import javax.sql.DataSource;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.ArrayList;
-import java.math.BigDecimal;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class DatabaseController {
 
+    // How applyTransactionsToAccounts replays the transaction history onto the starting balances
+    public enum ReplayMode {
+        MEMORY, // single pass over the transactions with a hash index of accounts
+        SQL     // one set-based MERGE computed by H2
+    }
+
+    // Receives rows from streamTransactions while the result set is still open
+    public interface TransactionConsumer {
+        void accept(Transaction transaction) throws IOException;
+    }
+
+    public enum TransferResult {
+        COMPLETED,
+        INSUFFICIENT_FUNDS,
+        ACCOUNT_NOT_FOUND,
+        CONFLICT, // still losing to concurrent transfers after every retry
+        INVALID,  // a bulk transfer line with a missing account, a bad amount or the same account twice
+        FAILED
+    }
+
+    // What one mergeUpstream call added, rows that were already present aren't counted
+    public static final class MergeResult {
+        private final int newAccounts;
+        private final int newTransactions;
+
+        MergeResult(int newAccounts, int newTransactions) {
+            this.newAccounts = newAccounts;
+            this.newTransactions = newTransactions;
+        }
+
+        public int getNewAccounts() {
+            return newAccounts;
+        }
+
+        public int getNewTransactions() {
+            return newTransactions;
+        }
+    }
+
+    /*
+    The order every write path locks accounts in, the same as H2's ORDER BY id. H2 compares UUIDs as
+    unsigned numbers while UUID.compareTo is signed, so ids with the top bit set would sort differently.
+     */
+    static final Comparator<UUID> ACCOUNT_LOCK_ORDER = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    static final int MAX_TRANSFER_ATTEMPTS = 5;
+    private static final long TRANSFER_BACKOFF_MILLIS = 5;
+    private static final int STREAM_FETCH_SIZE = 500;
+
     private DataSource dataSource;
     private Logger log;
+    private final BusinessRegistry businesses;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean csvReadBusinesses;
+    private ReplayMode replayMode = ReplayMode.MEMORY;
+    private PasswordHasher passwordHasher = PasswordHasher.defaultHasher();
+    private TransferMetrics transferMetrics = TransferMetrics.shared();
+    private IngestionMetrics ingestionMetrics = IngestionMetrics.shared();
+    private SpendingLeaderboard leaderboard;
 
-    // Constructor with both DataSource and Logger
-    public DatabaseController(DataSource dataSource, Logger log) {
+    public DatabaseController(DataSource dataSource, Logger log, BusinessRegistry businesses) {
         this.dataSource = dataSource;
         this.log = log;
+        this.businesses = businesses;
+    }
+
+    // Constructor with both DataSource and Logger, using the packaged businesses list
+    public DatabaseController(DataSource dataSource, Logger log) {
+        this(dataSource, log, BusinessRegistry.classpath());
     }
 
     // Constructor with only DataSource (optional, but ensure logger is initialized)
@@ -31,101 +99,233 @@ public class DatabaseController {
         this(dataSource, null); // You can provide a default logger here or throw an exception
     }
 
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void setReplayMode(ReplayMode replayMode) {
+        this.replayMode = replayMode;
+    }
+
+    public void setCsvReadBusinesses(boolean csvReadBusinesses) {
+        this.csvReadBusinesses = csvReadBusinesses;
+    }
+
+    public void setPasswordHasher(PasswordHasher passwordHasher) {
+        this.passwordHasher = passwordHasher;
+    }
+
+    public void setTransferMetrics(TransferMetrics transferMetrics) {
+        this.transferMetrics = transferMetrics;
+    }
+
+    public void setIngestionMetrics(IngestionMetrics ingestionMetrics) {
+        this.ingestionMetrics = ingestionMetrics;
+    }
+
+    // Optional, when set it is rebuilt on ingest and kept up to date by every write path
+    public void setLeaderboard(SpendingLeaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+    }
+
     public void setupDatabase() {
+        try {
+            createSchema();
+            loadBusinesses();
+            loadAccounts();
+            loadTransactions();
+            replayTransactions();
+        } catch (SQLException e) {
+            log.error("Database Creation Error", e);
+        }
+    }
+
+    /*
+    The steps of setupDatabase, for App to run as separate startup stages. Each one is a single database
+    transaction that inTransaction commits when it is done; the insert helpers only send their batches.
+    Businesses, accounts and transactions only need the schema, so they can be loaded at the same time,
+    and the replay needs all three.
+     */
+    public void createSchema() throws SQLException {
         try (Connection connection = dataSource.getConnection()) {
-            // Create necessary tables
             createTables(connection);
+        }
+    }
 
-            // Insert accounts into the database
-            insertAccounts(connection);
+    public void loadBusinesses() throws SQLException {
+        inTransaction(this::insertBusinesses);
+    }
 
-            // Insert businesses into the database
-            insertBusinesses(connection);
+    public void loadAccounts() throws SQLException {
+        inTransaction(this::insertAccounts);
+    }
 
-            // Insert transactions into the database
-            insertTransactions(connection);
+    public void loadTransactions() throws SQLException {
+        inTransaction(this::insertTransactions);
+    }
 
+    // Brings the starting balances up to date, then builds the category totals and the leaderboard
+    public void replayTransactions() throws SQLException {
+        inTransaction(connection -> {
             applyTransactionsToAccounts(connection);
 
-        } catch (SQLException e) {
-            log.error("Database Creation Error", e);
+            // Per-account category totals behind the spending page
+            rebuildCategorySpend(connection);
+        });
+
+        if (leaderboard != null) {
+            long start = System.nanoTime();
+            leaderboard.rebuild(App.accounts, App.transactions);
+            logLoadRate("Spending leaderboard", App.transactions.size(), start);
         }
     }
 
-    private void createTables(Connection connection) throws SQLException {
-        try (Statement stmt = connection.createStatement()) {
-            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS Accounts (id UUID PRIMARY KEY, Name VARCHAR(255), Balance DOUBLE, RoundUpEnabled BOOLEAN, Postcode VARCHAR(255))");
-            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS Transactions (id UUID PRIMARY KEY, `From` VARCHAR(255), `To` VARCHAR(255), Amount DOUBLE, Date VARCHAR(255), Type VARCHAR(255) )");
-            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS Businesses (id VARCHAR(255), `Name` VARCHAR(255), `Category` VARCHAR(255), `Sanctioned` VARCHAR(255))");
-            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS Users (id UUID PRIMARY KEY, `Email` VARCHAR(255), `Name` VARCHAR(255), `Password` VARCHAR(255), `Role` VARCHAR(255), `Account` UUID)");
+    private interface ConnectionWork {
+        void run(Connection connection) throws SQLException;
+    }
+
+    // Bulk loads run in explicit transactions
+    private void inTransaction(ConnectionWork work) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                work.run(connection);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
         }
     }
 
+    private void createTables(Connection connection) throws SQLException {
+        // Tables, indexes and constraints are all owned by the versioned migrations
+        new SchemaMigrator(log).migrate(connection);
+    }
+
     private void insertBusinesses(Connection connection) throws SQLException {
-        List<List<String>> data = new ArrayList<>();
-        String file = "src/main/resources/data/businesses.csv";
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                List<String> lineData = Arrays.asList(line.split(","));
-                data.add(lineData);
+        long start = System.nanoTime();
+        if (csvReadBusinesses) {
+            // Let H2 read the CSV itself rather than binding every row, from the same file the registry reads
+            Path file = businesses.getFile();
+            String source = file != null ? file.toAbsolutePath().toString() : "classpath:" + BusinessRegistry.RESOURCE;
+            try (Statement stmt = connection.createStatement()) {
+                int rows = stmt.executeUpdate("INSERT INTO Businesses (id, Name, Category, Sanctioned) "
+                        + "SELECT * FROM CSVREAD('" + source.replace("'", "''") + "', 'ID,NAME,CATEGORY,SANCTIONED', 'charset=UTF-8')");
+                logLoadRate("Businesses", rows, start);
             }
-        } catch (IOException e) {
-            log.error("Error reading businesses CSV file", e);
-            throw new RuntimeException(e);
+            return;
         }
 
+        insertBusinessRows(connection, start);
+    }
+
+    private void insertBusinessRows(Connection connection, long start) throws SQLException {
         String insertBusinessSql = "INSERT INTO Businesses (id, Name, Category, Sanctioned) VALUES (?, ?, ?, ?)";
         try (PreparedStatement preparedStatement = connection.prepareStatement(insertBusinessSql)) {
-            for (List<String> list : data) {
-                preparedStatement.setString(1, list.get(0));
-                preparedStatement.setString(2, list.get(1));
-                preparedStatement.setString(3, list.get(2));
-                preparedStatement.setString(4, list.get(3));
-                preparedStatement.executeUpdate();
+            int rows = 0;
+            for (Business business : businesses.getAll()) {
+                preparedStatement.setString(1, business.getId());
+                preparedStatement.setString(2, business.getName());
+                preparedStatement.setString(3, business.getCategory());
+                preparedStatement.setBoolean(4, business.isSanctioned());
+                addToBatch(preparedStatement, ++rows);
             }
+            preparedStatement.executeBatch();
+            logLoadRate("Businesses", rows, start);
+        }
+    }
+
+    /*
+    Replaces the Businesses table with the registry's current list, called after the CSV is reloaded.
+    The new list, the category totals and the sanctions flags are committed together, so readers never
+    see one without the others and a failure anywhere leaves all three as they were.
+     */
+    public void reloadBusinesses() {
+        try {
+            inTransaction(connection -> {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.executeUpdate("DELETE FROM Businesses");
+                }
+                insertBusinessRows(connection, System.nanoTime());
+
+                // A business may have moved category or been (un)sanctioned, so both are recomputed
+                rebuildCategorySpend(connection);
+                rescreenSanctions(connection);
+            });
+        } catch (SQLException e) {
+            log.error("Error reloading businesses", e);
         }
     }
 
     private void insertAccounts(Connection connection) throws SQLException {
+        long start = System.nanoTime();
         String insertAccountSql = "INSERT INTO Accounts (id, Name, Balance, RoundUpEnabled, Postcode) VALUES (?, ?, ?, ?, ?)";
         try (PreparedStatement preparedStatement = connection.prepareStatement(insertAccountSql)) {
+            int rows = 0;
             for (Account account : App.accounts) {
                 preparedStatement.setObject(1, account.getId());
                 preparedStatement.setString(2, account.getName());
-                preparedStatement.setDouble(3, account.getBalance().doubleValue());
+                preparedStatement.setLong(3, account.getBalancePence());
                 preparedStatement.setString(4, account.isRoundUpEnabled() ? "true" : "false");
                 preparedStatement.setString(5, account.getPostcode());
-                preparedStatement.executeUpdate();
+                addToBatch(preparedStatement, ++rows);
             }
+            preparedStatement.executeBatch();
+            logLoadRate("Accounts", rows, start);
         }
     }
 
     private void insertTransactions(Connection connection) throws SQLException {
-        String insertTransactionSql = "INSERT INTO Transactions (id, `From`, `To`, Amount, Date, Type) VALUES (?, ?, ?, ?, ?, ?)";
+        long start = System.nanoTime();
+        String insertTransactionSql = "INSERT INTO Transactions (id, `From`, `To`, Amount, Date, Type, Sanctioned) VALUES (?, ?, ?, ?, ?, ?, ?)";
         try (PreparedStatement preparedStatement = connection.prepareStatement(insertTransactionSql)) {
+            int rows = 0;
             for (Transaction transaction : App.transactions) {
                 preparedStatement.setObject(1, transaction.getTransactionId());
                 preparedStatement.setObject(2, transaction.getFrom());
                 preparedStatement.setObject(3, transaction.getTo());
-                preparedStatement.setDouble(4, transaction.getAmount());
+                preparedStatement.setLong(4, transaction.getAmountPence());
                 preparedStatement.setString(5, transaction.getDate());
                 preparedStatement.setString(6, transaction.getType());
-                preparedStatement.executeUpdate();
+                preparedStatement.setBoolean(7, isSanctioned(transaction.getFrom(), transaction.getTo()));
+                addToBatch(preparedStatement, ++rows);
             }
+            preparedStatement.executeBatch();
+            logLoadRate("Transactions", rows, start);
+        }
+    }
+
+    // Queues the current parameters and sends the batch every batchSize rows
+    private void addToBatch(PreparedStatement preparedStatement, int rows) throws SQLException {
+        preparedStatement.addBatch();
+        if (rows % batchSize == 0) {
+            preparedStatement.executeBatch();
         }
     }
 
+    private void logLoadRate(String table, int rows, long startNanos) {
+        long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+        ingestionMetrics.loaded(table, rows, elapsedNanos);
+        log.info("Loaded {} rows into {} in {} ms ({} rows/s)", rows, table, elapsedNanos / 1_000_000,
+                Math.round(rows / (elapsedNanos / 1_000_000_000.0)));
+    }
+
     public void addAccount(Account account) {
         String insertAccountSql = "INSERT INTO Accounts (id, Name, Balance, RoundUpEnabled, Postcode) VALUES (?, ?, ?, ?, ?)";
         try (Connection connection = dataSource.getConnection();
              PreparedStatement preparedStatement = connection.prepareStatement(insertAccountSql)) {
             preparedStatement.setObject(1, account.getId());
             preparedStatement.setString(2, account.getName());
-            preparedStatement.setDouble(3, account.getBalance().doubleValue());
+            preparedStatement.setLong(3, account.getBalancePence());
             preparedStatement.setString(4, account.isRoundUpEnabled() ? "true" : "false");
             preparedStatement.setString(5, account.getPostcode());
             preparedStatement.executeUpdate();
+            if (leaderboard != null) {
+                leaderboard.registerAccount(account.getId(), account.getName(), account.getPostcode());
+            }
         } catch (SQLException e) {
             log.error("Error adding account: " + account.getName(), e);
         }
@@ -138,7 +338,7 @@ public class DatabaseController {
             preparedStatement.setString(1, accountName);
             try (ResultSet rs = preparedStatement.executeQuery()) {
                 if (rs.next()) {
-                    return String.valueOf(rs.getDouble("Balance"));
+                    return String.valueOf(Money.toPounds(rs.getLong("Balance")));
                 }
             }
         } catch (SQLException e) {
@@ -175,10 +375,10 @@ public class DatabaseController {
                     UUID transactionId = UUID.fromString(rs.getString("id"));
                     String from = (rs.getString("From"));
                     String to = (rs.getString("To"));
-                    double amount = rs.getDouble("Amount");
+                    long amount = rs.getLong("Amount");
                     String date = rs.getString("Date");
                     String type = rs.getString("Type");
-                    transactions.add(new Transaction(transactionId, amount, date, from, to, type));
+                    transactions.add(Transaction.ofPence(transactionId, amount, date, from, to, type));
                 }
             }
         } catch (SQLException e) {
@@ -222,6 +422,24 @@ public class DatabaseController {
         return null;
     }
 
+    // Everything the session needs to know about a user, in one query
+    public Principal getPrincipalFromEmail(String email) {
+        String query = "SELECT Account, Role, Name FROM Users WHERE Email = ?";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            preparedStatement.setString(1, email);
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if (rs.next()) {
+                    String account = rs.getString("Account");
+                    return new Principal(email, account == null ? null : UUID.fromString(account), rs.getString("Role"), rs.getString("Name"));
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Error retrieving user with Email: " + email, e);
+        }
+        return null;
+    }
+
     public String getNamefromID(UUID id) {
         String query = "SELECT Name FROM Users WHERE Account = ?";
         try (Connection connection = dataSource.getConnection();
@@ -238,6 +456,58 @@ public class DatabaseController {
         return null;
     }
 
+    /*
+    Resolves the account itself and every counterparty referenced by the transactions to a display name,
+    keyed by the id as it appears in the transaction. Short ids are business codes, everything else is an account.
+    Accounts are resolved with one set-based query however many transactions there are, businesses from the registry.
+     */
+    public Map<String, String> getCounterpartyNames(UUID accountId, List<Transaction> transactions) {
+        Set<UUID> accountIds = new HashSet<>();
+        Set<String> businessIds = new HashSet<>();
+        if (accountId != null) {
+            accountIds.add(accountId);
+        }
+        for (Transaction transaction : transactions) {
+            addCounterparty(transaction.getFrom(), accountIds, businessIds);
+            addCounterparty(transaction.getTo(), accountIds, businessIds);
+        }
+
+        Map<String, String> names = new HashMap<>();
+        String usersQuery = "SELECT Account, Name FROM Users WHERE Account = ANY(?)";
+        if (!accountIds.isEmpty()) {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement preparedStatement = connection.prepareStatement(usersQuery)) {
+                preparedStatement.setObject(1, accountIds.toArray(new UUID[0]));
+                try (ResultSet rs = preparedStatement.executeQuery()) {
+                    while (rs.next()) {
+                        names.putIfAbsent(rs.getString("Account"), rs.getString("Name"));
+                    }
+                }
+            } catch (SQLException e) {
+                log.error("Error resolving counterparty names for account with ID: " + accountId, e);
+            }
+        }
+        for (String businessId : businessIds) {
+            names.put(businessId, businesses.getName(businessId));
+        }
+        return names;
+    }
+
+    private static void addCounterparty(String id, Set<UUID> accountIds, Set<String> businessIds) {
+        if (id == null) {
+            return;
+        }
+        if (id.length() <= 3) {
+            businessIds.add(id);
+            return;
+        }
+        try {
+            accountIds.add(UUID.fromString(id));
+        } catch (IllegalArgumentException e) {
+            // not an account id, leave it unresolved
+        }
+    }
+
     public String getBalanceFromID(UUID id) {
         String query = "SELECT Balance FROM Accounts WHERE id = ?";
         try (Connection connection = dataSource.getConnection();
@@ -245,7 +515,7 @@ public class DatabaseController {
             preparedStatement.setObject(1, id);
             try (ResultSet rs = preparedStatement.executeQuery()) {
                 if (rs.next()) {
-                    return String.valueOf(rs.getDouble("Balance"));
+                    return Money.toBigDecimal(rs.getLong("Balance")).toPlainString(); // exact pounds and pence, e.g. "7.05"
                 }
             }
         } catch (SQLException e) {
@@ -254,53 +524,280 @@ public class DatabaseController {
         return null;
     }
 
-    public void transferFunds(UUID fromAccountId, UUID toAccountId, double amount) {
-        String withdrawSql = "UPDATE Accounts SET Balance = Balance - ? WHERE id = ?";
-        String depositSql = "UPDATE Accounts SET Balance = Balance + ? WHERE id = ?";
-        String insertTransactionSql = "INSERT INTO Transactions (id, `From`, `To`, Amount, Date, Type) VALUES (?, ?, ?, ?, ?, ?)";
+    /*
+    Moves amountPence between two accounts without taking any locks up front.
+    Each attempt reads both accounts' balance and version, then applies the debit as a single conditional
+    UPDATE that only matches if the source still has the version we read and enough money, so two
+    concurrent transfers can never both spend the same balance. If the debit doesn't match, the attempt is
+    rolled back and retried against fresh values after a short randomised backoff.
+    The two rows are always updated in account id order, so concurrent transfers in opposite directions
+    can't deadlock.
+     */
+    public TransferResult transferFunds(UUID fromAccountId, UUID toAccountId, long amountPence) {
+        TransferResult result = TransferResult.CONFLICT;
+        for (int attempt = 0; attempt < MAX_TRANSFER_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                transferMetrics.retry();
+                if (!backOff(attempt)) {
+                    result = TransferResult.FAILED;
+                    break;
+                }
+            }
+            result = attemptTransfer(fromAccountId, toAccountId, amountPence);
+            if (result != TransferResult.CONFLICT) {
+                break;
+            }
+            transferMetrics.conflict();
+        }
+        transferMetrics.record(result, amountPence);
+        return result;
+    }
+
+    private TransferResult attemptTransfer(UUID fromAccountId, UUID toAccountId, long amountPence) {
+        String readSql = "SELECT id, Balance, Version FROM Accounts WHERE id = ?";
+        String debitSql = "UPDATE Accounts SET Balance = Balance - ?, Version = Version + 1 WHERE id = ? AND Version = ? AND Balance >= ?";
+        String creditSql = "UPDATE Accounts SET Balance = Balance + ?, Version = Version + 1 WHERE id = ?";
+        String insertTransactionSql = "INSERT INTO Transactions (id, `From`, `To`, Amount, Date, Type, Sanctioned) VALUES (?, ?, ?, ?, ?, ?, ?)";
 
         try (Connection connection = dataSource.getConnection()) {
             connection.setAutoCommit(false);
 
-            try (PreparedStatement withdrawStmt = connection.prepareStatement(withdrawSql);
-                 PreparedStatement depositStmt = connection.prepareStatement(depositSql);
+            try (PreparedStatement readStmt = connection.prepareStatement(readSql);
+                 PreparedStatement debitStmt = connection.prepareStatement(debitSql);
+                 PreparedStatement creditStmt = connection.prepareStatement(creditSql);
                  PreparedStatement transactionStmt = connection.prepareStatement(insertTransactionSql)) {
 
-                // Withdraw from the source account
-                withdrawStmt.setDouble(1, amount);
-                withdrawStmt.setObject(2, fromAccountId);
-                withdrawStmt.executeUpdate();
+                long fromVersion;
+                readStmt.setObject(1, fromAccountId);
+                try (ResultSet rs = readStmt.executeQuery()) {
+                    if (!rs.next()) {
+                        connection.rollback();
+                        return TransferResult.ACCOUNT_NOT_FOUND;
+                    }
+                    if (rs.getLong("Balance") < amountPence) {
+                        connection.rollback();
+                        return TransferResult.INSUFFICIENT_FUNDS;
+                    }
+                    fromVersion = rs.getLong("Version");
+                }
+
+                debitStmt.setLong(1, amountPence);
+                debitStmt.setObject(2, fromAccountId);
+                debitStmt.setLong(3, fromVersion);
+                debitStmt.setLong(4, amountPence);
+                creditStmt.setLong(1, amountPence);
+                creditStmt.setObject(2, toAccountId);
 
-                // Deposit to the destination account
-                depositStmt.setDouble(1, amount);
-                depositStmt.setObject(2, toAccountId);
-                depositStmt.executeUpdate();
+                // Lowest account id first, whichever side of the transfer it is
+                boolean debitFirst = ACCOUNT_LOCK_ORDER.compare(fromAccountId, toAccountId) < 0;
+                PreparedStatement first = debitFirst ? debitStmt : creditStmt;
+                PreparedStatement second = debitFirst ? creditStmt : debitStmt;
+                int firstRows = first.executeUpdate();
+                int secondRows = firstRows == 0 ? 0 : second.executeUpdate();
+                if (firstRows == 0 || secondRows == 0) {
+                    connection.rollback();
+                    // A credit that matched nothing means the payee doesn't exist, a debit means we raced someone
+                    boolean creditMissed = debitFirst ? firstRows == 1 : firstRows == 0;
+                    return creditMissed ? TransferResult.ACCOUNT_NOT_FOUND : TransferResult.CONFLICT;
+                }
 
                 // Record the transaction
                 transactionStmt.setObject(1, UUID.randomUUID());
                 transactionStmt.setObject(2, fromAccountId);
                 transactionStmt.setObject(3, toAccountId);
-                transactionStmt.setDouble(4, amount);
-                transactionStmt.setString(5, new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm").format(new java.util.Date()));
+                transactionStmt.setLong(4, amountPence);
+                String date = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm").format(new java.util.Date());
+                transactionStmt.setString(5, date);
                 transactionStmt.setString(6, "TRANSFER");
+                transactionStmt.setBoolean(7, isSanctioned(fromAccountId.toString(), toAccountId.toString()));
                 transactionStmt.executeUpdate();
 
                 connection.commit();
+                if (leaderboard != null) {
+                    leaderboard.recordSpend(fromAccountId.toString(), amountPence, date);
+                }
+                return TransferResult.COMPLETED;
             } catch (SQLException e) {
                 connection.rollback();
+                if (isTransientConflict(e)) {
+                    return TransferResult.CONFLICT;
+                }
                 log.error("Error transferring funds from account " + fromAccountId + " to account " + toAccountId, e);
+                return TransferResult.FAILED;
             }
         } catch (SQLException e) {
             log.error("Database connection error during fund transfer", e);
+            return TransferResult.FAILED;
+        }
+    }
+
+    /*
+    Applies many transfers with one commit per batchSize instructions instead of one per transfer.
+    Each chunk locks every account it touches (in id order, like transferFunds), then applies the
+    instructions in the order given against those balances in memory, so an earlier item can fund
+    a later one and an overdraft is rejected exactly as a single transfer would be. The net balance
+    changes and the transaction rows are then written as two JDBC batches.
+    Returns one result per instruction, in the same order.
+     */
+    public List<TransferResult> bulkTransfer(List<TransferInstruction> instructions) {
+        List<TransferResult> results = new ArrayList<>(instructions.size());
+        for (int start = 0; start < instructions.size(); start += batchSize) {
+            List<TransferInstruction> chunk = instructions.subList(start, Math.min(start + batchSize, instructions.size()));
+            List<TransferResult> chunkResults = null;
+            for (int attempt = 0; attempt < MAX_TRANSFER_ATTEMPTS && chunkResults == null; attempt++) {
+                if (attempt > 0) {
+                    transferMetrics.retry();
+                    if (!backOff(attempt)) {
+                        break;
+                    }
+                }
+                chunkResults = applyTransferChunk(chunk);
+                if (chunkResults == null) {
+                    transferMetrics.conflict();
+                }
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                TransferResult result;
+                if (chunkResults != null) {
+                    result = chunkResults.get(i);
+                } else {
+                    result = chunk.get(i).isValid() ? TransferResult.CONFLICT : TransferResult.INVALID;
+                }
+                transferMetrics.record(result, chunk.get(i).getAmountPence());
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    // One chunk in one database transaction, or null if it lost a lock and should be retried
+    private List<TransferResult> applyTransferChunk(List<TransferInstruction> chunk) {
+        Set<UUID> accountIds = new HashSet<>();
+        for (TransferInstruction instruction : chunk) {
+            if (instruction.isValid()) {
+                accountIds.add(instruction.getFrom());
+                accountIds.add(instruction.getTo());
+            }
+        }
+
+        String lockSql = "SELECT id, Balance FROM Accounts WHERE id = ANY(?) ORDER BY id FOR UPDATE";
+        String updateSql = "UPDATE Accounts SET Balance = ?, Version = Version + 1 WHERE id = ?";
+        String insertTransactionSql = "INSERT INTO Transactions (id, `From`, `To`, Amount, Date, Type, Sanctioned) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        String date = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm").format(new java.util.Date());
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement lockStmt = connection.prepareStatement(lockSql);
+                 PreparedStatement updateStmt = connection.prepareStatement(updateSql);
+                 PreparedStatement transactionStmt = connection.prepareStatement(insertTransactionSql)) {
+
+                Map<UUID, long[]> balances = new HashMap<>(accountIds.size() * 2);
+                lockStmt.setObject(1, accountIds.toArray(new UUID[0]));
+                try (ResultSet rs = lockStmt.executeQuery()) {
+                    while (rs.next()) {
+                        balances.put(rs.getObject("id", UUID.class), new long[] {rs.getLong("Balance")});
+                    }
+                }
+
+                List<TransferResult> results = new ArrayList<>(chunk.size());
+                Set<UUID> changed = new HashSet<>();
+                int rows = 0;
+                for (TransferInstruction instruction : chunk) {
+                    if (!instruction.isValid()) {
+                        results.add(TransferResult.INVALID);
+                        continue;
+                    }
+                    long[] from = balances.get(instruction.getFrom());
+                    long[] to = balances.get(instruction.getTo());
+                    if (from == null || to == null) {
+                        results.add(TransferResult.ACCOUNT_NOT_FOUND);
+                        continue;
+                    }
+                    if (from[0] < instruction.getAmountPence()) {
+                        results.add(TransferResult.INSUFFICIENT_FUNDS);
+                        continue;
+                    }
+                    from[0] -= instruction.getAmountPence();
+                    to[0] += instruction.getAmountPence();
+                    changed.add(instruction.getFrom());
+                    changed.add(instruction.getTo());
+
+                    transactionStmt.setObject(1, UUID.randomUUID());
+                    transactionStmt.setObject(2, instruction.getFrom());
+                    transactionStmt.setObject(3, instruction.getTo());
+                    transactionStmt.setLong(4, instruction.getAmountPence());
+                    transactionStmt.setString(5, date);
+                    transactionStmt.setString(6, "TRANSFER");
+                    transactionStmt.setBoolean(7, isSanctioned(instruction.getFrom().toString(), instruction.getTo().toString()));
+                    addToBatch(transactionStmt, ++rows);
+                    results.add(TransferResult.COMPLETED);
+                }
+                transactionStmt.executeBatch();
+
+                int updates = 0;
+                for (UUID accountId : changed) {
+                    updateStmt.setLong(1, balances.get(accountId)[0]);
+                    updateStmt.setObject(2, accountId);
+                    addToBatch(updateStmt, ++updates);
+                }
+                updateStmt.executeBatch();
+
+                connection.commit();
+                if (leaderboard != null) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        if (results.get(i) == TransferResult.COMPLETED) {
+                            leaderboard.recordSpend(chunk.get(i).getFrom().toString(), chunk.get(i).getAmountPence(), date);
+                        }
+                    }
+                }
+                return results;
+            } catch (SQLException e) {
+                connection.rollback();
+                if (isTransientConflict(e)) {
+                    return null;
+                }
+                log.error("Error applying bulk transfers", e);
+                List<TransferResult> failed = new ArrayList<>(chunk.size());
+                for (TransferInstruction instruction : chunk) {
+                    failed.add(instruction.isValid() ? TransferResult.FAILED : TransferResult.INVALID);
+                }
+                return failed;
+            }
+        } catch (SQLException e) {
+            log.error("Database connection error during bulk transfer", e);
+            List<TransferResult> failed = new ArrayList<>(chunk.size());
+            for (TransferInstruction ignored : chunk) {
+                failed.add(TransferResult.FAILED);
+            }
+            return failed;
         }
     }
 
+    // Deadlocks, serialization failures and lock timeouts are worth another attempt
+    private static boolean isTransientConflict(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("40") || "HYT00".equals(state));
+    }
+
+    // Sleeps a random time up to TRANSFER_BACKOFF_MILLIS * 2^(attempt - 1), returns false if interrupted
+    private static boolean backOff(int attempt) {
+        long ceiling = TRANSFER_BACKOFF_MILLIS << (attempt - 1);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, ceiling + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Both run on the hashing pool and throw RejectedExecutionException when it is saturated
     public String encryptPassword(String unencryptedPassword){
-        return BCrypt.hashpw(unencryptedPassword, BCrypt.gensalt());
+        return passwordHasher.hash(unencryptedPassword);
     }
 
     public boolean verifyPassword(String enteredPassword, String encryptedPassword){
-        return BCrypt.checkpw(enteredPassword, encryptedPassword);
+        return passwordHasher.verify(enteredPassword, encryptedPassword);
     }
 
     public boolean emailExists(String email) {
@@ -336,19 +833,7 @@ public class DatabaseController {
     }
 
     public String getBusinessName(String id) {
-        String query = "SELECT Name FROM Businesses WHERE id = ?";
-        try (Connection connection = dataSource.getConnection();
-             PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-            preparedStatement.setObject(1, id);
-            try (ResultSet rs = preparedStatement.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString("Name");
-                }
-            }
-        } catch (SQLException e) {
-            log.error("Error retrieving business with ID: " + id, e);
-        }
-        return null;
+        return businesses.getName(id);
     }
 
     public String getRoleFromEmail(String email) {
@@ -377,10 +862,10 @@ public class DatabaseController {
                     UUID transactionId = UUID.fromString(rs.getString("id"));
                     String from = (rs.getString("From"));
                     String to = (rs.getString("To"));
-                    double amount = rs.getDouble("Amount");
+                    long amount = rs.getLong("Amount");
                     String date = rs.getString("Date");
                     String type = rs.getString("Type");
-                    transactions.add(new Transaction(transactionId, amount, date, from, to, type));
+                    transactions.add(Transaction.ofPence(transactionId, amount, date, from, to, type));
                 }
             }
         } catch (SQLException e) {
@@ -392,31 +877,205 @@ public class DatabaseController {
         return transactions;
     }
 
-    public List<Transaction> getSanctionedTransactions() {
+    /*
+    Keyset pagination for the admin transaction list: sort is "date" or "amount", ties are broken by id.
+    With a cursor, the range condition on the leading sort column lets H2 seek into the (column, id) index
+    instead of reading and discarding every earlier row.
+     */
+    public Page<Transaction> getTransactionsPage(String sort, boolean descending, String cursor, int size) {
+        boolean byAmount = "amount".equals(sort);
+        String column = byAmount ? "Amount" : "Date";
+        String[] after = cursor == null ? null : Page.decodeCursor(cursor);
+        String query = "SELECT id, `From`, `To`, Amount, Date, Type FROM Transactions"
+                + (after == null ? "" : keysetCondition(column, descending))
+                + orderBy(column, descending) + " LIMIT ?";
+
         List<Transaction> transactions = new ArrayList<>();
-        String query = "SELECT id, `From`, `To`, Amount, Date, Type FROM Transactions WHERE `From` IN (SELECT id FROM Businesses WHERE Sanctioned = 'true') OR `To` IN (SELECT id FROM Businesses WHERE Sanctioned = 'true')";
         try (Connection connection = dataSource.getConnection();
              PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            int index = 1;
+            if (after != null) {
+                index = bindKeyset(preparedStatement, byAmount ? Long.valueOf(after[0]) : after[0], after[1]);
+            }
+            preparedStatement.setInt(index, size + 1); // one extra row tells us whether there is a next page
             try (ResultSet rs = preparedStatement.executeQuery()) {
                 while (rs.next()) {
                     UUID transactionId = UUID.fromString(rs.getString("id"));
                     String from = (rs.getString("From"));
                     String to = (rs.getString("To"));
-                    double amount = rs.getDouble("Amount");
+                    long amount = rs.getLong("Amount");
                     String date = rs.getString("Date");
                     String type = rs.getString("Type");
-                    transactions.add(new Transaction(transactionId, amount, date, from, to, type));
+                    transactions.add(Transaction.ofPence(transactionId, amount, date, from, to, type));
                 }
             }
         } catch (SQLException e) {
-            log.error("Error retrieving all transactions", e);
+            log.error("Error retrieving transactions page", e);
         }
 
-        Collections.reverse(transactions); // reversing so most recent transactions are first
+        String nextCursor = null;
+        if (transactions.size() > size) {
+            transactions.remove(size);
+            Transaction last = transactions.get(size - 1);
+            nextCursor = Page.encodeCursor(byAmount ? String.valueOf(last.getAmountPence()) : last.getDate(), last.getTransactionId());
+        }
+        return new Page<>(transactions, nextCursor);
+    }
+
+    // Keyset pagination for the admin account list: sort is "balance" or "name", ties are broken by id
+    public Page<Account> getAccountsPage(String sort, boolean descending, String cursor, int size) {
+        boolean byName = "name".equals(sort);
+        String column = byName ? "Name" : "Balance";
+        String[] after = cursor == null ? null : Page.decodeCursor(cursor);
+        String query = "SELECT id, Name, Balance, RoundUpEnabled, Postcode FROM Accounts"
+                + (after == null ? "" : keysetCondition(column, descending))
+                + orderBy(column, descending) + " LIMIT ?";
+
+        List<Account> accounts = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            int index = 1;
+            if (after != null) {
+                index = bindKeyset(preparedStatement, byName ? after[0] : Long.valueOf(after[0]), after[1]);
+            }
+            preparedStatement.setInt(index, size + 1);
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while (rs.next()) {
+                    UUID accountId = UUID.fromString(rs.getString("id"));
+                    String name = rs.getString("Name");
+                    long balance = rs.getLong("Balance");
+                    String postcode = rs.getString("Postcode");
+                    boolean roundUpEnabled = rs.getBoolean("RoundUpEnabled");
+                    accounts.add(Account.ofPence(accountId, name, balance, roundUpEnabled, postcode));
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Error retrieving accounts page", e);
+        }
+
+        String nextCursor = null;
+        if (accounts.size() > size) {
+            accounts.remove(size);
+            Account last = accounts.get(size - 1);
+            nextCursor = Page.encodeCursor(byName ? last.getName() : String.valueOf(last.getBalancePence()), UUID.fromString(last.getId()));
+        }
+        return new Page<>(accounts, nextCursor);
+    }
+
+    // "column <= v AND (column < v OR id < lastId)" - the first half is the index range, the second skips the seen ties
+    private static String keysetCondition(String column, boolean descending) {
+        String op = descending ? "<" : ">";
+        return " WHERE " + column + " " + op + "= ? AND (" + column + " " + op + " ? OR id " + op + " ?)";
+    }
+
+    private static String orderBy(String column, boolean descending) {
+        String direction = descending ? " DESC" : " ASC";
+        return " ORDER BY " + column + direction + ", id" + direction;
+    }
+
+    private static int bindKeyset(PreparedStatement preparedStatement, Object sortValue, String id) throws SQLException {
+        preparedStatement.setObject(1, sortValue);
+        preparedStatement.setObject(2, sortValue);
+        preparedStatement.setObject(3, UUID.fromString(id));
+        return 4;
+    }
+
+    /*
+    Walks every transaction (or only the sanctioned ones), newest first, handing each row to the consumer
+    as it is read. The query runs lazily so H2 doesn't materialise the whole result, which keeps memory
+    flat however large the table is. Returns the number of rows streamed.
+     */
+    public int streamTransactions(boolean sanctionedOnly, TransactionConsumer consumer) throws IOException {
+        String query = "SELECT id, `From`, `To`, Amount, Date, Type FROM Transactions"
+                + (sanctionedOnly ? " WHERE Sanctioned = TRUE" : "")
+                + " ORDER BY Date DESC, id DESC";
+        int rows = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            }
+            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+                try (ResultSet rs = preparedStatement.executeQuery()) {
+                    while (rs.next()) {
+                        UUID transactionId = UUID.fromString(rs.getString("id"));
+                        String from = (rs.getString("From"));
+                        String to = (rs.getString("To"));
+                        long amount = rs.getLong("Amount");
+                        String date = rs.getString("Date");
+                        String type = rs.getString("Type");
+                        consumer.accept(Transaction.ofPence(transactionId, amount, date, from, to, type));
+                        rows++;
+                    }
+                }
+            } finally {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("SET LAZY_QUERY_EXECUTION FALSE"); // pooled connection, put it back as we found it
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Error streaming transactions", e);
+        }
+        return rows;
+    }
+
+    /*
+    Each transaction's Sanctioned flag is worked out when it is written (from the businesses registry) and
+    re-screened whenever the businesses list changes, so this is a range read on the
+    (Sanctioned, Date, id) index, already newest first.
+     */
+    public List<Transaction> getSanctionedTransactions() {
+        List<Transaction> transactions = new ArrayList<>();
+        String query = "SELECT id, `From`, `To`, Amount, Date, Type FROM Transactions WHERE Sanctioned = TRUE ORDER BY Date DESC, id DESC";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while (rs.next()) {
+                    UUID transactionId = UUID.fromString(rs.getString("id"));
+                    String from = (rs.getString("From"));
+                    String to = (rs.getString("To"));
+                    long amount = rs.getLong("Amount");
+                    String date = rs.getString("Date");
+                    String type = rs.getString("Type");
+                    transactions.add(Transaction.ofPence(transactionId, amount, date, from, to, type));
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Error retrieving sanctioned transactions", e);
+        }
 
         return transactions;
     }
 
+    // Re-applies the current sanctions list to every stored transaction, returns how many flags changed
+    public int rescreenSanctions() {
+        try (Connection connection = dataSource.getConnection()) {
+            return rescreenSanctions(connection);
+        } catch (SQLException e) {
+            log.error("Error re-screening transactions for sanctions", e);
+            return -1;
+        }
+    }
+
+    private int rescreenSanctions(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        String screen = "(COALESCE(`From` = ANY(?), FALSE) OR COALESCE(`To` = ANY(?), FALSE))";
+        String rescreenSql = "UPDATE Transactions SET Sanctioned = " + screen + " WHERE Sanctioned <> " + screen;
+        try (PreparedStatement preparedStatement = connection.prepareStatement(rescreenSql)) {
+            String[] sanctionedIds = businesses.getSanctionedIds().toArray(new String[0]);
+            for (int i = 1; i <= 4; i++) {
+                preparedStatement.setObject(i, sanctionedIds);
+            }
+            int rows = preparedStatement.executeUpdate();
+            logLoadRate("Transactions (sanctions re-screen)", rows, start);
+            return rows;
+        }
+    }
+
+    private boolean isSanctioned(String from, String to) {
+        return businesses.isSanctioned(from) || businesses.isSanctioned(to);
+    }
+
     public List<Account> getAllAccounts() {
         List<Account> accounts = new ArrayList<>();
         String query = "SELECT id, Name, Balance, RoundUpEnabled, Postcode FROM Accounts";
@@ -426,10 +1085,10 @@ public class DatabaseController {
                 while (rs.next()) {
                     UUID accountId = UUID.fromString(rs.getString("id"));
                     String name = rs.getString("Name");
-                    double balance = rs.getDouble("Balance");
+                    long balance = rs.getLong("Balance");
                     String postcode = rs.getString("Postcode");
                     boolean roundUpEnabled = rs.getBoolean("RoundUpEnabled");
-                    accounts.add(new Account(accountId, name, balance, roundUpEnabled, postcode));
+                    accounts.add(Account.ofPence(accountId, name, balance, roundUpEnabled, postcode));
                 }
             }
         } catch (SQLException e) {
@@ -440,37 +1099,215 @@ public class DatabaseController {
     }
 
     void applyTransactionsToAccounts(Connection connection) {
+        if (replayMode == ReplayMode.SQL) {
+            applyTransactionsInDatabase(connection);
+            return;
+        }
+
         List<Account> accounts = getAllAccounts();
         List<Transaction> transactions = getAllTransactions();
 
+        // Index accounts by id so each transaction is a couple of hash lookups instead of a scan.
+        // Balances and amounts are both whole pence, so the replay is plain long arithmetic
+        Map<String, Account> accountsById = new HashMap<>(accounts.size() * 2);
+        for (Account account : accounts) {
+            accountsById.put(account.getId(), account);
+        }
+
         for (Transaction transaction : transactions) {
-            for (Account account : accounts) {
-                if (account.getId().equals(transaction.getFrom())) {
-                    account.setBalance(account.getBalance().subtract(BigDecimal.valueOf(transaction.getAmount())).doubleValue());
-                }
-                if (account.getId().equals(transaction.getTo())) {
-                    account.setBalance(account.getBalance().add(BigDecimal.valueOf(transaction.getAmount())).doubleValue());
-                }
+            Account from = transaction.getFrom() == null ? null : accountsById.get(transaction.getFrom());
+            if (from != null) {
+                from.setBalancePence(from.getBalancePence() - transaction.getAmountPence());
+            }
+            Account to = transaction.getTo() == null ? null : accountsById.get(transaction.getTo());
+            if (to != null) {
+                to.setBalancePence(to.getBalancePence() + transaction.getAmountPence());
             }
         }
 
         updateAccounts(connection, accounts);
     }
 
+    /*
+    Set-based replay: one UPDATE adds each account's incoming and subtracts its outgoing amounts. The sums
+    are correlated subqueries on the indexed `To` and `From` columns, probed with the account id as text,
+    so each account costs two index lookups. Joining on a cast of Accounts.id instead would stop H2 using
+    the primary key and scan every account for every id in Transactions.
+     */
+    private void applyTransactionsInDatabase(Connection connection) {
+        long start = System.nanoTime();
+        String replaySql = "UPDATE Accounts a SET Balance = a.Balance "
+                + "+ COALESCE((SELECT SUM(t.Amount) FROM Transactions t WHERE t.`To` = CAST(a.id AS VARCHAR)), 0) "
+                + "- COALESCE((SELECT SUM(t.Amount) FROM Transactions t WHERE t.`From` = CAST(a.id AS VARCHAR)), 0)";
+        try (Statement stmt = connection.createStatement()) {
+            int rows = stmt.executeUpdate(replaySql);
+            logLoadRate("Accounts (balances)", rows, start);
+        } catch (SQLException e) {
+            log.error("Error updating account balances", e);
+        }
+    }
+
     private void updateAccounts(Connection connection, List<Account> accounts) {
+        long start = System.nanoTime();
         String updateAccountSql = "UPDATE Accounts SET Balance = ? WHERE id = ?";
         try (PreparedStatement preparedStatement = connection.prepareStatement(updateAccountSql)) {
+            int rows = 0;
             for (Account account : accounts) {
-                preparedStatement.setDouble(1, account.getBalance().doubleValue());
+                preparedStatement.setLong(1, account.getBalancePence());
                 preparedStatement.setObject(2, account.getId());
-                preparedStatement.executeUpdate();
+                addToBatch(preparedStatement, ++rows);
             }
+            preparedStatement.executeBatch();
+            logLoadRate("Accounts (balances)", rows, start);
         } catch (SQLException e) {
             log.error("Error updating account balances", e);
         }
     }
 
+    /*
+    Brings upstream records fetched after startup into the database. Both tables are merged on id and only
+    rows that weren't already there are inserted, so overlapping fetches are harmless. The balance effect
+    of each new transaction is added to the accounts it touches (rather than replaying the whole history),
+    along with its category spend, all in one database transaction. Returns null if it was rolled back.
+     */
+    public MergeResult mergeUpstream(List<Account> accounts, List<Transaction> transactions) {
+        long start = System.nanoTime();
+        String mergeAccountSql = "MERGE INTO Accounts a "
+                + "USING (VALUES (CAST(? AS UUID), CAST(? AS VARCHAR(255)), CAST(? AS BIGINT), CAST(? AS BOOLEAN), CAST(? AS VARCHAR(255)))) "
+                + "v(id, Name, Balance, RoundUpEnabled, Postcode) ON a.id = v.id "
+                + "WHEN NOT MATCHED THEN INSERT (id, Name, Balance, RoundUpEnabled, Postcode) "
+                + "VALUES (v.id, v.Name, v.Balance, v.RoundUpEnabled, v.Postcode)";
+        String mergeTransactionSql = "MERGE INTO Transactions t "
+                + "USING (VALUES (CAST(? AS UUID), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS BIGINT), "
+                + "CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS BOOLEAN))) "
+                + "v(id, `From`, `To`, Amount, Date, Type, Sanctioned) ON t.id = v.id "
+                + "WHEN NOT MATCHED THEN INSERT (id, `From`, `To`, Amount, Date, Type, Sanctioned) "
+                + "VALUES (v.id, v.`From`, v.`To`, v.Amount, v.Date, v.Type, v.Sanctioned)";
+        // Bumping Version makes any transfer that read the old balance retry
+        String balanceSql = "UPDATE Accounts SET Balance = Balance + ?, Version = Version + 1 WHERE id = ?";
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement accountStmt = connection.prepareStatement(mergeAccountSql);
+                 PreparedStatement transactionStmt = connection.prepareStatement(mergeTransactionSql);
+                 PreparedStatement balanceStmt = connection.prepareStatement(balanceSql);
+                 PreparedStatement categorySpendStmt = prepareCategorySpend(connection)) {
+
+                List<Account> newAccounts = new ArrayList<>();
+                List<Account> queuedAccounts = new ArrayList<>(batchSize);
+                for (Account account : accounts) {
+                    accountStmt.setObject(1, UUID.fromString(account.getId()));
+                    accountStmt.setString(2, account.getName());
+                    accountStmt.setLong(3, account.getBalancePence());
+                    accountStmt.setBoolean(4, account.isRoundUpEnabled());
+                    accountStmt.setString(5, account.getPostcode());
+                    accountStmt.addBatch();
+                    queuedAccounts.add(account);
+                    if (queuedAccounts.size() == batchSize) {
+                        executeMerge(accountStmt, queuedAccounts, newAccounts);
+                    }
+                }
+                executeMerge(accountStmt, queuedAccounts, newAccounts);
+
+                List<Transaction> newTransactions = new ArrayList<>();
+                List<Transaction> queuedTransactions = new ArrayList<>(batchSize);
+                for (Transaction transaction : transactions) {
+                    if (transaction.getTransactionId() == null) {
+                        continue; // nothing to merge on
+                    }
+                    transactionStmt.setObject(1, transaction.getTransactionId());
+                    transactionStmt.setString(2, transaction.getFrom());
+                    transactionStmt.setString(3, transaction.getTo());
+                    transactionStmt.setLong(4, transaction.getAmountPence());
+                    transactionStmt.setString(5, transaction.getDate());
+                    transactionStmt.setString(6, transaction.getType());
+                    transactionStmt.setBoolean(7, isSanctioned(transaction.getFrom(), transaction.getTo()));
+                    transactionStmt.addBatch();
+                    queuedTransactions.add(transaction);
+                    if (queuedTransactions.size() == batchSize) {
+                        executeMerge(transactionStmt, queuedTransactions, newTransactions);
+                    }
+                }
+                executeMerge(transactionStmt, queuedTransactions, newTransactions);
+
+                // Net effect per account, so an account touched by many new transactions is updated once,
+                // in the same id order transfers lock them in so a sync can't deadlock with one
+                Map<UUID, Long> deltas = new TreeMap<>(ACCOUNT_LOCK_ORDER);
+                int categorySpends = 0;
+                for (Transaction transaction : newTransactions) {
+                    UUID from = accountId(transaction.getFrom());
+                    UUID to = accountId(transaction.getTo());
+                    if (from != null) {
+                        deltas.merge(from, -transaction.getAmountPence(), Long::sum);
+                        if (addCategorySpend(categorySpendStmt, from, transaction.getTo(), transaction.getAmountPence())) {
+                            categorySpends++;
+                        }
+                    }
+                    if (to != null) {
+                        deltas.merge(to, transaction.getAmountPence(), Long::sum);
+                    }
+                }
+                if (categorySpends > 0) {
+                    categorySpendStmt.executeBatch();
+                }
+                int updates = 0;
+                for (Map.Entry<UUID, Long> delta : deltas.entrySet()) {
+                    balanceStmt.setLong(1, delta.getValue());
+                    balanceStmt.setObject(2, delta.getKey());
+                    addToBatch(balanceStmt, ++updates);
+                }
+                balanceStmt.executeBatch();
+
+                connection.commit();
+                if (leaderboard != null) {
+                    for (Account account : newAccounts) {
+                        leaderboard.registerAccount(account.getId(), account.getName(), account.getPostcode());
+                    }
+                    for (Transaction transaction : newTransactions) {
+                        leaderboard.recordSpend(transaction.getFrom(), transaction.getAmountPence(), transaction.getDate());
+                    }
+                }
+                logLoadRate("Transactions (upstream sync)", newTransactions.size(), start);
+                return new MergeResult(newAccounts.size(), newTransactions.size());
+            } catch (SQLException e) {
+                connection.rollback();
+                log.error("Error merging upstream records", e);
+                return null;
+            }
+        } catch (SQLException e) {
+            log.error("Database connection error during upstream merge", e);
+            return null;
+        }
+    }
+
+    // Sends the queued rows and keeps those the MERGE inserted (an update count of 1) rather than matched
+    private static <T> void executeMerge(PreparedStatement preparedStatement, List<T> queued, List<T> inserted) throws SQLException {
+        if (queued.isEmpty()) {
+            return;
+        }
+        int[] counts = preparedStatement.executeBatch();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                inserted.add(queued.get(i));
+            }
+        }
+        queued.clear();
+    }
+
+    // Transaction ends are account ids or business codes, only the former have a balance
+    private static UUID accountId(String id) {
+        if (id == null || id.length() <= 3) {
+            return null;
+        }
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 
+
+    // Ranks accounts by aggregating Transactions directly, the admin page reads SpendingLeaderboard instead
     public List<Account> getTopTenBiggestSpenders() {
         List<Account> accounts = new ArrayList<>();
         String query = "SELECT id, Name, Balance, RoundUpEnabled, Postcode FROM Accounts ORDER BY (SELECT SUM(Amount) FROM Transactions WHERE `From` = Accounts.id) DESC LIMIT 10";
@@ -480,10 +1317,10 @@ public class DatabaseController {
                 while (rs.next()) {
                     UUID accountId = UUID.fromString(rs.getString("id"));
                     String name = rs.getString("Name");
-                    double balance = rs.getDouble("Balance");
+                    long balance = rs.getLong("Balance");
                     String postcode = rs.getString("Postcode");
                     boolean roundUpEnabled = rs.getBoolean("RoundUpEnabled");
-                    accounts.add(new Account(accountId, name, balance, roundUpEnabled, postcode));
+                    accounts.add(Account.ofPence(accountId, name, balance, roundUpEnabled, postcode));
                 }
             }
         } catch (SQLException e) {
@@ -492,17 +1329,23 @@ public class DatabaseController {
         return accounts;
     }
 
+    /*
+    AccountCategorySpend holds each account's running total per spending category, so the spending page
+    is a primary key range read instead of a scan and GROUP BY over every transaction.
+    It is rebuilt from scratch at startup, whenever the businesses list changes and on demand from the
+    admin pages. Transfers only ever pay another account, never a business, so they leave it alone; the
+    upstream sync is the one write path that records business payments, and it adds them in the same
+    database transaction.
+     */
     public List<CategoryAmount> getcategoryandamountspentfromId(UUID id) {
         List<CategoryAmount> categoryAmounts = new ArrayList<>();
-        String query = "SELECT Category, SUM(Amount) FROM Transactions JOIN Businesses ON Transactions.`To` = Businesses.id WHERE `From` = ? GROUP BY Category";
+        String query = "SELECT Category, Amount FROM AccountCategorySpend WHERE Account = ? ORDER BY Category";
         try (Connection connection = dataSource.getConnection();
              PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-            preparedStatement.setObject(1, id);
+            preparedStatement.setString(1, id.toString());
             try (ResultSet rs = preparedStatement.executeQuery()) {
                 while (rs.next()) {
-                    String category = rs.getString("Category");
-                    double amount = rs.getDouble("SUM(Amount)");
-                    categoryAmounts.add(new CategoryAmount(category, amount));
+                    categoryAmounts.add(CategoryAmount.ofPence(rs.getString("Category"), rs.getLong("Amount")));
                 }
             }
         } catch (SQLException e) {
@@ -510,4 +1353,57 @@ public class DatabaseController {
         }
         return categoryAmounts;
     }
+
+    // Recomputes every account's category totals, returns the number of totals or -1 on error
+    public int rebuildCategorySpend() {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                int rows = rebuildCategorySpend(connection);
+                connection.commit();
+                return rows;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.error("Error rebuilding category spending totals", e);
+            return -1;
+        }
+    }
+
+    private int rebuildCategorySpend(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM AccountCategorySpend");
+            int rows = stmt.executeUpdate("INSERT INTO AccountCategorySpend (Account, Category, Amount) "
+                    + "SELECT t.`From`, b.`Category`, SUM(t.Amount) FROM Transactions t JOIN Businesses b ON b.id = t.`To` "
+                    + "WHERE t.`From` IS NOT NULL GROUP BY t.`From`, b.`Category`");
+            logLoadRate("AccountCategorySpend", rows, start);
+            return rows;
+        }
+    }
+
+    private static PreparedStatement prepareCategorySpend(Connection connection) throws SQLException {
+        return connection.prepareStatement("MERGE INTO AccountCategorySpend s "
+                + "USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS BIGINT))) v(Account, Category, Amount) "
+                + "ON s.Account = v.Account AND s.Category = v.Category "
+                + "WHEN MATCHED THEN UPDATE SET Amount = s.Amount + v.Amount "
+                + "WHEN NOT MATCHED THEN INSERT (Account, Category, Amount) VALUES (v.Account, v.Category, v.Amount)");
+    }
+
+    // Queues a spend against the payee's category, returns false when the payee isn't a business
+    private boolean addCategorySpend(PreparedStatement categorySpendStmt, UUID from, String to, long amountPence) throws SQLException {
+        String category = businesses.getCategory(to);
+        if (category == null) {
+            return false;
+        }
+        categorySpendStmt.setString(1, from.toString());
+        categorySpendStmt.setString(2, category);
+        categorySpendStmt.setLong(3, amountPence);
+        categorySpendStmt.addBatch();
+        return true;
+    }
 }
\ No newline at end of file
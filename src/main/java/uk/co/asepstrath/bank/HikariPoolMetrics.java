@@ -0,0 +1,69 @@
+package uk.co.asepstrath.bank;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Connection pool metrics for the HikariModule DataSource. Hikari calls the tracker on every connection
+checkout and return; the pool gauges (active, idle, pending) come from its own PoolStats when scraped.
+Install with HikariDataSource.setMetricsTrackerFactory, which Hikari allows once per pool.
+ */
+public class HikariPoolMetrics implements MetricsTrackerFactory, Metrics.Collector {
+
+    // Checkouts from a warm pool take microseconds, a starved one waits up to the connection timeout
+    private static final double[] ACQUIRE_BOUNDS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.1, 0.5, 1, 5, 30};
+
+    private final LatencyHistogram acquire = new LatencyHistogram(ACQUIRE_BOUNDS);
+    private final LatencyHistogram usage = new LatencyHistogram();
+    private final LongAdder timeouts = new LongAdder();
+    private volatile String poolName = "";
+    private volatile PoolStats poolStats;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolName = poolName;
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquire.record(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usage.record(elapsedBorrowedMillis * 1_000_000);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        PoolStats stats = poolStats;
+        if (stats == null) {
+            return; // not installed on a pool
+        }
+        String pool = Metrics.Writer.labels("pool", poolName);
+        out.header("scotbank_db_pool_connections", "gauge", "Connections in the pool by state");
+        out.sample("scotbank_db_pool_connections", pool + ",state=\"active\"", stats.getActiveConnections());
+        out.sample("scotbank_db_pool_connections", pool + ",state=\"idle\"", stats.getIdleConnections());
+        out.sample("scotbank_db_pool_connections", pool + ",state=\"total\"", stats.getTotalConnections());
+        out.header("scotbank_db_pool_max_connections", "gauge", "Maximum pool size");
+        out.sample("scotbank_db_pool_max_connections", pool, stats.getMaxConnections());
+        out.header("scotbank_db_pool_pending_threads", "gauge", "Threads waiting for a connection");
+        out.sample("scotbank_db_pool_pending_threads", pool, stats.getPendingThreads());
+        out.header("scotbank_db_pool_acquire_seconds", "histogram", "Time to check a connection out of the pool");
+        out.histogram("scotbank_db_pool_acquire_seconds", pool, acquire);
+        out.header("scotbank_db_pool_usage_seconds", "histogram", "How long connections are held before being returned");
+        out.histogram("scotbank_db_pool_usage_seconds", pool, usage);
+        out.header("scotbank_db_pool_timeouts_total", "counter", "Checkouts that gave up waiting for a connection");
+        out.sample("scotbank_db_pool_timeouts_total", pool, timeouts.sum());
+    }
+}
@@ -0,0 +1,84 @@
+package uk.co.asepstrath.bank;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Progress of the startup load: upstream pages fetched out of those planned, transactions parsed, and
+rows written (and time spent) per table. Shared like TransferMetrics, so App's fetch and every
+DatabaseController report into the same counters.
+ */
+public class IngestionMetrics implements Metrics.Collector {
+
+    private static final IngestionMetrics SHARED = new IngestionMetrics();
+
+    private volatile int pagesPlanned;
+    private final LongAdder pagesFetched = new LongAdder();
+    private final LongAdder pagesFailed = new LongAdder();
+    private final LongAdder transactionsFetched = new LongAdder();
+    private final Map<String, LongAdder> rowsLoaded = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> loadNanos = new ConcurrentHashMap<>();
+    private volatile boolean complete;
+
+    public static IngestionMetrics shared() {
+        return SHARED;
+    }
+
+    void pagesPlanned(int pages) {
+        pagesPlanned = pages;
+    }
+
+    void pageFetched(int transactions) {
+        pagesFetched.increment();
+        transactionsFetched.add(transactions);
+    }
+
+    void pageFailed() {
+        pagesFailed.increment();
+    }
+
+    void loaded(String table, int rows, long nanos) {
+        rowsLoaded.computeIfAbsent(table, t -> new LongAdder()).add(rows);
+        loadNanos.computeIfAbsent(table, t -> new LongAdder()).add(nanos);
+    }
+
+    void complete() {
+        complete = true;
+    }
+
+    public long getPagesFetched() {
+        return pagesFetched.sum();
+    }
+
+    public long getPagesFailed() {
+        return pagesFailed.sum();
+    }
+
+    public long getTransactionsFetched() {
+        return transactionsFetched.sum();
+    }
+
+    public long getRowsLoaded(String table) {
+        LongAdder rows = rowsLoaded.get(table);
+        return rows == null ? 0 : rows.sum();
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.gauge("scotbank_ingestion_pages_planned", "Upstream transaction pages to fetch", pagesPlanned);
+        out.header("scotbank_ingestion_pages_total", "counter", "Upstream transaction pages fetched, by outcome");
+        out.sample("scotbank_ingestion_pages_total", "outcome=\"fetched\"", pagesFetched.sum());
+        out.sample("scotbank_ingestion_pages_total", "outcome=\"failed\"", pagesFailed.sum());
+        out.counter("scotbank_ingestion_transactions_fetched_total", "Transactions parsed from upstream pages", transactionsFetched.sum());
+        out.header("scotbank_ingestion_rows_loaded_total", "counter", "Rows written by the database load, by step");
+        rowsLoaded.forEach((table, rows) -> out.sample("scotbank_ingestion_rows_loaded_total", Metrics.Writer.labels("table", table), rows.sum()));
+        out.header("scotbank_ingestion_load_seconds_total", "counter", "Time spent in each database load step");
+        loadNanos.forEach((table, nanos) -> out.sample("scotbank_ingestion_load_seconds_total", Metrics.Writer.labels("table", table), nanos.sum() / 1_000_000_000.0));
+        out.gauge("scotbank_ingestion_complete", "1 once the startup load has finished", complete ? 1 : 0);
+    }
+}
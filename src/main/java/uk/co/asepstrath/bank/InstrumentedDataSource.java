@@ -0,0 +1,232 @@
+package uk.co.asepstrath.bank;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+Wraps a DataSource so every statement run on its connections is timed into QueryStats, without touching
+the SQL in DatabaseController. Connections, statements and result sets are JDK dynamic proxies over the
+pool's own objects; anything not involved in running a statement is passed straight through, and
+unwrap() still reaches the underlying pool.
+A query is recorded when its ResultSet (or failing that its Statement) is closed, so the fetch time
+and row count are known; updates and batches are recorded as soon as they return.
+ */
+public final class InstrumentedDataSource {
+
+    private InstrumentedDataSource() {
+    }
+
+    public static DataSource wrap(DataSource dataSource, QueryStats stats) {
+        return proxy(DataSource.class, dataSource, (target, method, args) -> {
+            Object result = invoke(target, method, args);
+            return result instanceof Connection connection ? proxy(Connection.class, connection, new ConnectionHandler(stats)) : result;
+        });
+    }
+
+    private interface Handler<T> {
+        Object invoke(T target, Method method, Object[] args) throws Throwable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, Handler<? super T> handler) {
+        InvocationHandler invocationHandler = (proxy, method, args) -> handler.invoke(target, method, args);
+        return (T) Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class<?>[]{type}, invocationHandler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class ConnectionHandler implements Handler<Connection> {
+        private final QueryStats stats;
+
+        private ConnectionHandler(QueryStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public Object invoke(Connection target, Method method, Object[] args) throws Throwable {
+            Object result = InstrumentedDataSource.invoke(target, method, args);
+            if (result instanceof PreparedStatement statement && method.getName().equals("prepareStatement")) {
+                return proxy(PreparedStatement.class, statement, new StatementHandler(stats, (String) args[0]));
+            }
+            if (result instanceof Statement statement && method.getName().equals("createStatement")) {
+                return proxy(Statement.class, statement, new StatementHandler(stats, null));
+            }
+            return result; // prepareCall and everything else is left alone
+        }
+    }
+
+    /*
+    One per statement, so it is only ever used by one thread at a time. Holds the parameters bound since
+    the last execution, and the query waiting for its result set to be read and closed.
+     */
+    private static final class StatementHandler implements Handler<Statement> {
+        private final QueryStats stats;
+        private final String preparedSql;
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+        private int batchSize;
+        private Execution pending;
+
+        private StatementHandler(QueryStats stats, String preparedSql) {
+            this.stats = stats;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Statement target, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (method.getDeclaringClass() == PreparedStatement.class && name.startsWith("set") && args != null && args.length >= 2) {
+                parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                return InstrumentedDataSource.invoke(target, method, args);
+            }
+            switch (name) {
+                case "clearParameters" -> parameters.clear();
+                case "addBatch" -> batchSize++;
+                case "clearBatch" -> batchSize = 0;
+                case "close" -> finishPending();
+                case "executeQuery" -> {
+                    return executeQuery(target, method, args);
+                }
+                case "execute", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch" -> {
+                    return executeUpdate(target, method, args);
+                }
+                default -> {
+                }
+            }
+            return InstrumentedDataSource.invoke(target, method, args);
+        }
+
+        private Object executeQuery(Statement target, Method method, Object[] args) throws Throwable {
+            finishPending();
+            String sql = sql(args);
+            long start = System.nanoTime();
+            ResultSet resultSet;
+            try {
+                resultSet = (ResultSet) InstrumentedDataSource.invoke(target, method, args);
+            } catch (Throwable e) {
+                stats.record(sql, System.nanoTime() - start, 0, 0, true, parameters, 0);
+                throw e;
+            }
+            pending = new Execution(sql, System.nanoTime() - start, new TreeMap<>(parameters));
+            return proxy(ResultSet.class, resultSet, new ResultSetHandler(this, pending));
+        }
+
+        private Object executeUpdate(Statement target, Method method, Object[] args) throws Throwable {
+            finishPending();
+            String sql = sql(args);
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = InstrumentedDataSource.invoke(target, method, args);
+            } catch (Throwable e) {
+                stats.record(sql, System.nanoTime() - start, 0, 0, true, parameters, batchSize);
+                batchSize = 0;
+                throw e;
+            }
+            stats.record(sql, System.nanoTime() - start, 0, rows(result), false, parameters, batchSize);
+            if (method.getName().contains("Batch")) {
+                batchSize = 0; // executing a batch clears it
+            }
+            return result;
+        }
+
+        // Statement passes the SQL to execute, PreparedStatement had it when prepared
+        private String sql(Object[] args) {
+            if (args != null && args.length > 0 && args[0] instanceof String sql) {
+                return sql;
+            }
+            return preparedSql != null ? preparedSql : "(statement batch)";
+        }
+
+        private void finish(Execution execution) {
+            if (pending == execution) {
+                pending = null;
+                stats.record(execution.sql, execution.executeNanos, execution.fetchNanos, execution.rows, false, execution.parameters, 0);
+            }
+        }
+
+        private void finishPending() {
+            if (pending != null) {
+                finish(pending);
+            }
+        }
+
+        private static long rows(Object result) {
+            if (result instanceof Number count) {
+                return Math.max(0, count.longValue());
+            }
+            long rows = 0;
+            if (result instanceof int[] counts) {
+                for (int count : counts) {
+                    rows += Math.max(0, count);
+                }
+            } else if (result instanceof long[] counts) {
+                for (long count : counts) {
+                    rows += Math.max(0, count);
+                }
+            }
+            return rows; // execute() returns a boolean, which counts as no rows
+        }
+    }
+
+    private static final class Execution {
+        private final String sql;
+        private final long executeNanos;
+        private final Map<Integer, Object> parameters;
+        private long fetchNanos;
+        private long rows;
+
+        private Execution(String sql, long executeNanos, Map<Integer, Object> parameters) {
+            this.sql = sql;
+            this.executeNanos = executeNanos;
+            this.parameters = parameters;
+        }
+    }
+
+    private static final class ResultSetHandler implements Handler<ResultSet> {
+        private final StatementHandler statement;
+        private final Execution execution;
+
+        private ResultSetHandler(StatementHandler statement, Execution execution) {
+            this.statement = statement;
+            this.execution = execution;
+        }
+
+        @Override
+        public Object invoke(ResultSet target, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next" -> {
+                    long start = System.nanoTime();
+                    Object hasRow = InstrumentedDataSource.invoke(target, method, args);
+                    execution.fetchNanos += System.nanoTime() - start;
+                    if (Boolean.TRUE.equals(hasRow)) {
+                        execution.rows++;
+                    }
+                    return hasRow;
+                }
+                case "close" -> {
+                    Object result = InstrumentedDataSource.invoke(target, method, args);
+                    statement.finish(execution);
+                    return result;
+                }
+                default -> {
+                    return InstrumentedDataSource.invoke(target, method, args);
+                }
+            }
+        }
+    }
+}
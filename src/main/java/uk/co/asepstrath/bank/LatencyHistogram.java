@@ -0,0 +1,71 @@
+package uk.co.asepstrath.bank;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+A fixed-bucket latency histogram, in the shape Prometheus expects (cumulative buckets, a sum and a count).
+Each bucket is a LongAdder, so recording is a scan of a dozen bounds and one add that threads don't
+contend on: no locks and no allocation on the request path.
+ */
+public class LatencyHistogram {
+
+    // Upper bounds in seconds, from a millisecond to ten seconds
+    public static final double[] REQUEST_BOUNDS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final double[] bounds;
+    private final long[] boundNanos;
+    private final LongAdder[] buckets; // one per bound plus the +Inf bucket, not cumulative
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        this(REQUEST_BOUNDS);
+    }
+
+    public LatencyHistogram(double... bounds) {
+        this.bounds = bounds.clone();
+        this.boundNanos = new long[bounds.length];
+        for (int i = 0; i < bounds.length; i++) {
+            boundNanos[i] = Math.round(bounds[i] * 1_000_000_000L);
+        }
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < boundNanos.length && nanos > boundNanos[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public double getSumSeconds() {
+        return sumNanos.sum() / 1_000_000_000.0;
+    }
+
+    double[] getBounds() {
+        return bounds;
+    }
+
+    // Running totals per bound, the last entry being the +Inf bucket (i.e. the count)
+    long[] getCumulativeCounts() {
+        long[] cumulative = new long[buckets.length];
+        long running = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            running += buckets[i].sum();
+            cumulative[i] = running;
+        }
+        return cumulative;
+    }
+}
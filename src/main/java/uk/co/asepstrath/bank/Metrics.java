@@ -0,0 +1,138 @@
+package uk.co.asepstrath.bank;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Everything behind /metrics, written out in the Prometheus text format.
+Request latencies and status codes are recorded per route by MetricsFilter; the other subsystems
+(password hashing, transfers, ingestion, the connection pool) keep their own counters and register
+as a Collector, so nothing is copied or aggregated until something scrapes.
+ */
+public class Metrics {
+
+    public interface Collector {
+        void collect(Writer out);
+    }
+
+    // Latency and status counts for one route, handed out once per route and then recorded into directly
+    public static final class RouteMetrics {
+        private final String labels;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        private RouteMetrics(String method, String route) {
+            this.labels = Writer.labels("method", method, "route", route);
+        }
+
+        public void record(int status, long nanos) {
+            latency.record(nanos);
+            LongAdder count = statuses.get(status);
+            if (count == null) {
+                count = statuses.computeIfAbsent(status, code -> new LongAdder());
+            }
+            count.increment();
+        }
+    }
+
+    private final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final List<Collector> collectors = new CopyOnWriteArrayList<>();
+
+    public RouteMetrics route(String method, String route) {
+        return routes.computeIfAbsent(method + " " + route, key -> new RouteMetrics(method, route));
+    }
+
+    public void register(Collector collector) {
+        collectors.add(collector);
+    }
+
+    public String scrape() {
+        Writer out = new Writer();
+        out.header("scotbank_http_requests_total", "counter", "HTTP requests by route and response status");
+        for (RouteMetrics route : routes.values()) {
+            for (Map.Entry<Integer, LongAdder> status : route.statuses.entrySet()) {
+                out.sample("scotbank_http_requests_total", route.labels + ",status=\"" + status.getKey() + "\"", status.getValue().sum());
+            }
+        }
+        out.header("scotbank_http_request_duration_seconds", "histogram", "HTTP request latency by route");
+        for (RouteMetrics route : routes.values()) {
+            out.histogram("scotbank_http_request_duration_seconds", route.labels, route.latency);
+        }
+        for (Collector collector : collectors) {
+            collector.collect(out);
+        }
+        return out.toString();
+    }
+
+    public static final class Writer {
+        private final StringBuilder out = new StringBuilder(4096);
+
+        public Writer header(String name, String type, String help) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            return this;
+        }
+
+        public Writer sample(String name, String labels, double value) {
+            out.append(name);
+            if (!labels.isEmpty()) {
+                out.append('{').append(labels).append('}');
+            }
+            out.append(' ').append(format(value)).append('\n');
+            return this;
+        }
+
+        // Header and one unlabelled sample, for the common single-value metrics
+        public Writer gauge(String name, String help, double value) {
+            return header(name, "gauge", help).sample(name, "", value);
+        }
+
+        public Writer counter(String name, String help, double value) {
+            return header(name, "counter", help).sample(name, "", value);
+        }
+
+        public Writer histogram(String name, String labels, LatencyHistogram histogram) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            double[] bounds = histogram.getBounds();
+            long[] cumulative = histogram.getCumulativeCounts();
+            for (int i = 0; i < bounds.length; i++) {
+                sample(name + "_bucket", prefix + "le=\"" + format(bounds[i]) + "\"", cumulative[i]);
+            }
+            sample(name + "_bucket", prefix + "le=\"+Inf\"", cumulative[bounds.length]);
+            sample(name + "_sum", labels, histogram.getSumSeconds());
+            return sample(name + "_count", labels, cumulative[bounds.length]);
+        }
+
+        // labels("method", "GET", "route", "/x") gives method="GET",route="/x"
+        public static String labels(String... namesAndValues) {
+            StringBuilder labels = new StringBuilder();
+            for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+                if (labels.length() > 0) {
+                    labels.append(',');
+                }
+                labels.append(namesAndValues[i]).append("=\"").append(escape(namesAndValues[i + 1])).append('"');
+            }
+            return labels.toString();
+        }
+
+        private static String escape(String value) {
+            return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        }
+
+        private static String format(double value) {
+            if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                return Long.toString((long) value);
+            }
+            return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+        }
+
+        @Override
+        public String toString() {
+            return out.toString();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package uk.co.asepstrath.bank;
+
+import io.jooby.Route;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Times every request on the routes registered after it and counts the response status, keyed by the
+route pattern (so /scotbank/dashboard, not each path a user happens to request).
+The time runs until the response has been sent, so it includes template rendering and any error page.
+ */
+public class MetricsFilter implements Route.Filter {
+
+    private final Metrics metrics;
+    private final Map<Route, Metrics.RouteMetrics> routes = new ConcurrentHashMap<>();
+
+    public MetricsFilter(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Route.Handler apply(Route.Handler next) {
+        return ctx -> {
+            long start = System.nanoTime();
+            Metrics.RouteMetrics route = routes.computeIfAbsent(ctx.getRoute(),
+                    r -> metrics.route(r.getMethod(), r.getPattern()));
+            ctx.onComplete(completed -> route.record(completed.getResponseCode().value(), System.nanoTime() - start));
+            return next.apply(ctx);
+        };
+    }
+}
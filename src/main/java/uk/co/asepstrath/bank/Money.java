@@ -0,0 +1,83 @@
+package uk.co.asepstrath.bank;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/*
+Money is held as a plain long count of pence everywhere it is stored or added up (Accounts.Balance,
+Transactions.Amount, the balance replay, transfers and the spending totals). Sums of pence are exact,
+so there is no floating point drift, and a long never needs boxing or a BigDecimal per addition.
+Pounds only appear at the edges: parsing the upstream feed and form input, and showing amounts in pages.
+ */
+public final class Money {
+
+    private static final int PENCE_PER_POUND = 100;
+
+    private Money() {
+    }
+
+    // Rounds to the nearest penny, e.g. 0.29 (stored as 0.28999...) becomes 29
+    public static long ofPounds(double pounds) {
+        return Math.round(pounds * PENCE_PER_POUND);
+    }
+
+    public static double toPounds(long pence) {
+        return (double) pence / PENCE_PER_POUND;
+    }
+
+    public static BigDecimal toBigDecimal(long pence) {
+        return BigDecimal.valueOf(pence, 2);
+    }
+
+    /*
+    Parses a decimal amount in pounds ("12", "-3.5", "0.07") straight into pence without going through
+    a double. Anything beyond plain digits with an optional point (exponents, more than two decimal
+    places) falls back to BigDecimal and is rounded half up to the penny.
+     */
+    public static long parse(String pounds) {
+        String value = pounds.trim();
+        int length = value.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            negative = value.charAt(i) == '-';
+            i++;
+        }
+
+        long whole = 0;
+        int digits = 0;
+        while (i < length && Character.isDigit(value.charAt(i)) && digits < 16) {
+            whole = whole * 10 + (value.charAt(i) - '0');
+            digits++;
+            i++;
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < length && value.charAt(i) == '.') {
+            i++;
+            while (i < length && Character.isDigit(value.charAt(i)) && fractionDigits < 2) {
+                fraction = fraction * 10 + (value.charAt(i) - '0');
+                fractionDigits++;
+                i++;
+            }
+        }
+
+        if (i != length || (digits == 0 && fractionDigits == 0)) {
+            return parseSlow(value);
+        }
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+        long pence = whole * PENCE_PER_POUND + fraction;
+        return negative ? -pence : pence;
+    }
+
+    private static long parseSlow(String pounds) {
+        try {
+            return new BigDecimal(pounds).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + pounds);
+        }
+    }
+}
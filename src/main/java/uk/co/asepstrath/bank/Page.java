@@ -0,0 +1,51 @@
+package uk.co.asepstrath.bank;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/*
+One page of a keyset-paginated listing.
+The cursor is an opaque token holding the sort value and id of the last row on the page;
+the next page starts strictly after that row, so it is found through the index rather than by skipping rows.
+ */
+public class Page<T> {
+
+    private final List<T> items;
+    private final String nextCursor;
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public static String encodeCursor(String sortValue, UUID id) {
+        String raw = sortValue + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns {sortValue, id}, or throws IllegalArgumentException for a token we didn't issue
+    public static String[] decodeCursor(String cursor) {
+        String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = raw.lastIndexOf('|');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid page cursor");
+        }
+        String id = raw.substring(separator + 1);
+        UUID.fromString(id); // validates
+        return new String[]{raw.substring(0, separator), id};
+    }
+}
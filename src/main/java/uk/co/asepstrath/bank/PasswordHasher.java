@@ -0,0 +1,154 @@
+package uk.co.asepstrath.bank;
+
+import org.mindrot.jbcrypt.BCrypt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Runs BCrypt hashing and verification on a small dedicated pool.
+Every hash costs tens of milliseconds of CPU, so a burst of logins is capped at `threads` hashes at
+a time with at most `queueCapacity` waiting behind them; anything beyond that is rejected straight
+away with a RejectedExecutionException instead of piling up and starving the request threads.
+ */
+public class PasswordHasher implements Metrics.Collector {
+
+    public static final int DEFAULT_COST = 10; // jBCrypt's own default
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    // Seconds; each step of the cost doubles the time, so these cover cost 8 to cost 14 or so
+    private static final double[] HASH_BOUNDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5};
+
+    // Shared hasher with the default settings, for callers that aren't handed one
+    private static final class DefaultHolder {
+        private static final PasswordHasher INSTANCE = new PasswordHasher(defaultThreads(), DEFAULT_QUEUE_CAPACITY,
+                DEFAULT_COST, LoggerFactory.getLogger(PasswordHasher.class));
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int cost;
+    private final Logger log;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LatencyHistogram hashTimes = new LatencyHistogram(HASH_BOUNDS);
+
+    public PasswordHasher(int threads, int queueCapacity, int cost, Logger log) {
+        this.cost = cost;
+        this.log = log;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread thread = new Thread(r, "scotbank-hasher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static PasswordHasher defaultHasher() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    public static int defaultThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
+    public String hash(String password) {
+        return run(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+    }
+
+    // The cost is read from the stored hash, so hashes made with an older cost still verify
+    public boolean verify(String password, String hash) {
+        return run(() -> BCrypt.checkpw(password, hash));
+    }
+
+    <T> T run(Callable<T> work) {
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long started = System.nanoTime();
+                queueWaitNanos.add(started - submitted);
+                try {
+                    return work.call();
+                } finally {
+                    long elapsed = System.nanoTime() - started;
+                    hashNanos.add(elapsed);
+                    hashTimes.record(elapsed);
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            log.warn("Password hashing pool is saturated ({} queued), rejecting request", executor.getQueue().size());
+            throw e;
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause(); // e.g. an invalid stored hash
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getHashNanos() {
+        return hashNanos.sum();
+    }
+
+    public long getQueueWaitNanos() {
+        return queueWaitNanos.sum();
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.header("scotbank_bcrypt_duration_seconds", "histogram", "Time to compute one BCrypt hash or check, excluding queueing");
+        out.histogram("scotbank_bcrypt_duration_seconds", "", hashTimes);
+        out.counter("scotbank_bcrypt_queue_wait_seconds_total", "Time hashing requests spent queued for a hasher thread", queueWaitNanos.sum() / 1_000_000_000.0);
+        out.counter("scotbank_bcrypt_rejected_total", "Hashing requests turned away because the queue was full", rejected.sum());
+        out.gauge("scotbank_bcrypt_queue_depth", "Hashing requests waiting for a thread", getQueueDepth());
+        out.gauge("scotbank_bcrypt_active", "Hashes being computed right now", getActiveCount());
+        out.gauge("scotbank_bcrypt_cost", "BCrypt cost factor for new hashes", cost);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
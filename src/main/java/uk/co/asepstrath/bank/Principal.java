@@ -0,0 +1,66 @@
+package uk.co.asepstrath.bank;
+
+import io.jooby.Session;
+
+import java.util.UUID;
+
+/*
+The signed-in user, resolved once at login and kept in the session.
+AuthFilter puts it on the request context under ATTRIBUTE for the handlers to use.
+ */
+public class Principal {
+
+    public static final String ATTRIBUTE = "principal";
+
+    private final String email;
+    private final UUID accountId;
+    private final String role;
+    private final String name;
+
+    public Principal(String email, UUID accountId, String role, String name) {
+        this.email = email;
+        this.accountId = accountId;
+        this.role = role;
+        this.name = name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public UUID getAccountId() {
+        return accountId;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isAdmin() {
+        return "admin".equals(role);
+    }
+
+    public void store(Session session) {
+        session.put("email", email);
+        session.put("role", role);
+        session.put("name", name == null ? "" : name);
+        if (accountId != null) {
+            session.put("accountId", accountId.toString());
+        }
+    }
+
+    // Returns null if the session doesn't hold a signed-in user
+    public static Principal fromSession(Session session) {
+        String email = session.get("email").valueOrNull();
+        String role = session.get("role").valueOrNull();
+        if (email == null || role == null) {
+            return null;
+        }
+        String accountId = session.get("accountId").valueOrNull();
+        return new Principal(email, accountId == null ? null : UUID.fromString(accountId), role, session.get("name").valueOrNull());
+    }
+}
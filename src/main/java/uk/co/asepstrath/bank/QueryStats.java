@@ -0,0 +1,213 @@
+package uk.co.asepstrath.bank;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/*
+Timings for every SQL statement run through InstrumentedDataSource, grouped by normalised SQL (whitespace
+collapsed, inline literals replaced with ?), so each of DatabaseController's statements is one entry
+however many times it runs. An execution is timed in two parts: execute is the call that runs the
+statement, fetch is the time spent in ResultSet.next reading the rows back.
+Statements slower than the threshold are logged with their bound parameters.
+ */
+public class QueryStats implements Metrics.Collector {
+
+    public static final long DEFAULT_SLOW_QUERY_MILLIS = 250;
+
+    public enum Order { TOTAL, MEAN, MAX }
+
+    public static final class Query {
+        private final String sql;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder executeNanos = new LongAdder();
+        private final LongAdder fetchNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+        private Query(String sql) {
+            this.sql = sql;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getExecuteNanos() {
+            return executeNanos.sum();
+        }
+
+        public long getFetchNanos() {
+            return fetchNanos.sum();
+        }
+
+        public long getTotalNanos() {
+            return executeNanos.sum() + fetchNanos.sum();
+        }
+
+        public long getMeanNanos() {
+            long executions = getExecutions();
+            return executions == 0 ? 0 : getTotalNanos() / executions;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+    }
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final int MAX_LOGGED_ARRAY_ELEMENTS = 10;
+    private static final int MAX_NORMALISED_CACHE = 1000;
+
+    private final Map<String, Query> queries = new ConcurrentHashMap<>();
+    private final Map<String, String> normalised = new ConcurrentHashMap<>();
+    private final Logger log;
+    private volatile long slowNanos;
+
+    // slowQueryMillis < 0 turns the slow query log off, 0 logs every statement
+    public QueryStats(Logger log, long slowQueryMillis) {
+        this.log = log;
+        setSlowQueryMillis(slowQueryMillis);
+    }
+
+    public void setSlowQueryMillis(long slowQueryMillis) {
+        this.slowNanos = slowQueryMillis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+    }
+
+    // Most statements are constant strings, so each is normalised once
+    String normalise(String sql) {
+        String cached = normalised.get(sql);
+        if (cached != null) {
+            return cached;
+        }
+        String result = WHITESPACE.matcher(sql).replaceAll(" ").trim();
+        result = STRING_LITERAL.matcher(result).replaceAll("?");
+        result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+        if (normalised.size() < MAX_NORMALISED_CACHE) {
+            normalised.put(sql, result);
+        }
+        return result;
+    }
+
+    /*
+    rows is the rows read back for a query or the update count for anything else; parameters holds the
+    bound values by index (empty for a plain Statement) and batchSize how many sets were batched, if any.
+     */
+    void record(String sql, long executeNanos, long fetchNanos, long rows, boolean failed,
+                Map<Integer, Object> parameters, int batchSize) {
+        String key = normalise(sql);
+        Query query = queries.get(key);
+        if (query == null) {
+            query = queries.computeIfAbsent(key, Query::new);
+        }
+        long total = executeNanos + fetchNanos;
+        query.executions.increment();
+        query.executeNanos.add(executeNanos);
+        query.fetchNanos.add(fetchNanos);
+        query.rows.add(rows);
+        query.maxNanos.accumulate(total);
+        if (failed) {
+            query.errors.increment();
+        }
+
+        if (total >= slowNanos && log != null) {
+            // Never write password hashes to the log
+            String bound = key.toLowerCase().contains("password") ? "[parameters hidden]" : describe(parameters, batchSize);
+            log.warn("Slow query: {} ms (execute {} ms, fetch {} ms), {} rows: {} {}", total / 1_000_000,
+                    executeNanos / 1_000_000, fetchNanos / 1_000_000, rows, key, bound);
+        }
+    }
+
+    public List<Query> top(Order order, int limit) {
+        Comparator<Query> comparator = switch (order) {
+            case TOTAL -> Comparator.comparingLong(Query::getTotalNanos);
+            case MEAN -> Comparator.comparingLong(Query::getMeanNanos);
+            case MAX -> Comparator.comparingLong(Query::getMaxNanos);
+        };
+        List<Query> sorted = new ArrayList<>(queries.values());
+        sorted.sort(comparator.reversed());
+        return sorted.subList(0, Math.min(Math.max(0, limit), sorted.size()));
+    }
+
+    // Plain text table behind /scotbank/adminQueries
+    public String report(Order order, int limit) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%10s %12s %10s %10s %12s %12s %8s  %s%n",
+                "count", "total ms", "mean ms", "max ms", "fetch ms", "rows", "errors", "sql"));
+        for (Query query : top(order, limit)) {
+            out.append(String.format("%10d %12.1f %10.3f %10.3f %12.1f %12d %8d  %s%n", query.getExecutions(),
+                    query.getTotalNanos() / 1e6, query.getMeanNanos() / 1e6, query.getMaxNanos() / 1e6,
+                    query.getFetchNanos() / 1e6, query.getRows(), query.getErrors(), query.getSql()));
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.header("scotbank_db_query_executions_total", "counter", "Executions per normalised SQL statement");
+        queries.values().forEach(query -> out.sample("scotbank_db_query_executions_total", labels(query), query.getExecutions()));
+        out.header("scotbank_db_query_seconds_total", "counter", "Time executing and fetching per normalised SQL statement");
+        queries.values().forEach(query -> out.sample("scotbank_db_query_seconds_total", labels(query), query.getTotalNanos() / 1e9));
+        out.header("scotbank_db_query_fetch_seconds_total", "counter", "Time reading result rows per normalised SQL statement");
+        queries.values().forEach(query -> out.sample("scotbank_db_query_fetch_seconds_total", labels(query), query.getFetchNanos() / 1e9));
+        out.header("scotbank_db_query_rows_total", "counter", "Rows read or updated per normalised SQL statement");
+        queries.values().forEach(query -> out.sample("scotbank_db_query_rows_total", labels(query), query.getRows()));
+        out.header("scotbank_db_query_errors_total", "counter", "Failed executions per normalised SQL statement");
+        queries.values().forEach(query -> out.sample("scotbank_db_query_errors_total", labels(query), query.getErrors()));
+    }
+
+    private static String labels(Query query) {
+        return Metrics.Writer.labels("sql", query.getSql());
+    }
+
+    private static String describe(Map<Integer, Object> parameters, int batchSize) {
+        StringBuilder description = new StringBuilder();
+        if (!parameters.isEmpty()) {
+            description.append('[');
+            parameters.forEach((index, value) -> {
+                if (description.length() > 1) {
+                    description.append(", ");
+                }
+                description.append(index).append('=').append(describe(value));
+            });
+            description.append(']');
+        }
+        if (batchSize > 0) {
+            description.append(description.length() > 0 ? " " : "").append("(batch of ").append(batchSize).append(", last shown)");
+        }
+        return description.toString();
+    }
+
+    private static String describe(Object value) {
+        if (value instanceof Object[] array) {
+            String shown = Arrays.toString(Arrays.copyOf(array, Math.min(array.length, MAX_LOGGED_ARRAY_ELEMENTS)));
+            return array.length > MAX_LOGGED_ARRAY_ELEMENTS
+                    ? shown.substring(0, shown.length() - 1) + ", ... " + array.length + " values]" : shown;
+        }
+        return value instanceof String ? "'" + value + "'" : String.valueOf(value);
+    }
+}
@@ -0,0 +1,36 @@
+package uk.co.asepstrath.bank;
+
+import io.jooby.MediaType;
+import io.jooby.Route;
+import io.jooby.StatusCode;
+
+/*
+Answers every route registered after it with a 503 until the startup load has finished, rather than
+letting requests run against half-loaded tables (or wait on the load's locks). If a required stage
+failed it keeps answering 503, since the tables will never be complete. Retry-After tells
+clients and load balancers when to come back; /health/ready has the detail.
+ */
+public class ReadinessFilter implements Route.Filter {
+
+    static final String RETRY_AFTER_SECONDS = "5";
+
+    private final StartupStages stages;
+
+    public ReadinessFilter(StartupStages stages) {
+        this.stages = stages;
+    }
+
+    @Override
+    public Route.Handler apply(Route.Handler next) {
+        return ctx -> {
+            if (stages.isReady()) {
+                return next.apply(ctx);
+            }
+            ctx.setResponseHeader("Retry-After", RETRY_AFTER_SECONDS);
+            ctx.setResponseType(MediaType.text);
+            return ctx.setResponseCode(StatusCode.SERVICE_UNAVAILABLE).send(stages.hasFailed()
+                    ? "Scotbank failed to start, see /health/ready."
+                    : "Scotbank is starting up, please try again shortly.");
+        };
+    }
+}
@@ -0,0 +1,136 @@
+package uk.co.asepstrath.bank;
+
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/*
+Versioned schema migrations.
+Each migration runs once, in order, and its version is recorded in the SchemaVersion table so
+starting against an existing database only applies the migrations it hasn't seen yet.
+New schema changes (tables, indexes, constraints) go at the end of MIGRATIONS - never edit one that has shipped.
+ */
+public class SchemaMigrator {
+
+    static final class Migration {
+        private final int version;
+        private final String description;
+        private final List<String> statements;
+
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = List.of(statements);
+        }
+
+        int getVersion() {
+            return version;
+        }
+
+        String getDescription() {
+            return description;
+        }
+
+        List<String> getStatements() {
+            return statements;
+        }
+    }
+
+    static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create tables",
+                    "CREATE TABLE IF NOT EXISTS Accounts (id UUID PRIMARY KEY, Name VARCHAR(255), Balance DOUBLE, RoundUpEnabled BOOLEAN, Postcode VARCHAR(255))",
+                    "CREATE TABLE IF NOT EXISTS Transactions (id UUID PRIMARY KEY, `From` VARCHAR(255), `To` VARCHAR(255), Amount DOUBLE, Date VARCHAR(255), Type VARCHAR(255) )",
+                    "CREATE TABLE IF NOT EXISTS Businesses (id VARCHAR(255), `Name` VARCHAR(255), `Category` VARCHAR(255), `Sanctioned` VARCHAR(255))",
+                    "CREATE TABLE IF NOT EXISTS Users (id UUID PRIMARY KEY, `Email` VARCHAR(255), `Name` VARCHAR(255), `Password` VARCHAR(255), `Role` VARCHAR(255), `Account` UUID)"),
+            new Migration(2, "Index hot lookups",
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_from ON Transactions (`From`)",
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_to ON Transactions (`To`)",
+                    "CREATE INDEX IF NOT EXISTS idx_users_email ON Users (`Email`)",
+                    "CREATE INDEX IF NOT EXISTS idx_users_account ON Users (`Account`)",
+                    "CREATE INDEX IF NOT EXISTS idx_accounts_name ON Accounts (Name)",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS idx_businesses_id ON Businesses (id)"),
+            new Migration(3, "Index admin page sort keys",
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_date_id ON Transactions (Date, id)",
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_amount_id ON Transactions (Amount, id)",
+                    "CREATE INDEX IF NOT EXISTS idx_accounts_balance_id ON Accounts (Balance, id)",
+                    "CREATE INDEX IF NOT EXISTS idx_accounts_name_id ON Accounts (Name, id)",
+                    "DROP INDEX IF EXISTS idx_accounts_name"),
+            // Existing pounds are rounded to whole pence before the columns change type
+            new Migration(4, "Store money as whole pence",
+                    "DROP INDEX IF EXISTS idx_transactions_amount_id",
+                    "DROP INDEX IF EXISTS idx_accounts_balance_id",
+                    "UPDATE Accounts SET Balance = ROUND(Balance * 100)",
+                    "ALTER TABLE Accounts ALTER COLUMN Balance SET DATA TYPE BIGINT",
+                    "UPDATE Transactions SET Amount = ROUND(Amount * 100)",
+                    "ALTER TABLE Transactions ALTER COLUMN Amount SET DATA TYPE BIGINT",
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_amount_id ON Transactions (Amount, id)",
+                    "CREATE INDEX IF NOT EXISTS idx_accounts_balance_id ON Accounts (Balance, id)"),
+            new Migration(5, "Version accounts for optimistic transfers",
+                    "ALTER TABLE Accounts ADD COLUMN IF NOT EXISTS Version BIGINT DEFAULT 0 NOT NULL"),
+            new Migration(6, "Per-account category spending totals",
+                    "CREATE TABLE IF NOT EXISTS AccountCategorySpend (Account VARCHAR(255) NOT NULL, Category VARCHAR(255) NOT NULL, "
+                            + "Amount BIGINT NOT NULL, PRIMARY KEY (Account, Category))"),
+            // Existing rows are flagged from the Businesses table, new ones are flagged as they are written
+            new Migration(7, "Flag sanctioned transactions",
+                    "ALTER TABLE Businesses ALTER COLUMN `Sanctioned` SET DATA TYPE BOOLEAN",
+                    "ALTER TABLE Transactions ADD COLUMN IF NOT EXISTS Sanctioned BOOLEAN DEFAULT FALSE NOT NULL",
+                    "UPDATE Transactions t SET Sanctioned = TRUE WHERE EXISTS "
+                            + "(SELECT 1 FROM Businesses b WHERE b.`Sanctioned` AND (b.id = t.`From` OR b.id = t.`To`))",
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_sanctioned_date_id ON Transactions (Sanctioned, Date DESC, id DESC)")
+    );
+
+    private final Logger log;
+
+    public SchemaMigrator(Logger log) {
+        this.log = log;
+    }
+
+    public void migrate(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS SchemaVersion (Version INT PRIMARY KEY, Description VARCHAR(255), AppliedOn TIMESTAMP)");
+        }
+
+        int current = currentVersion(connection);
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            for (Migration migration : MIGRATIONS) {
+                if (migration.getVersion() > current) {
+                    apply(connection, migration);
+                    current = migration.getVersion();
+                }
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    public int currentVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(Version) FROM SchemaVersion")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private void apply(Connection connection, Migration migration) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             PreparedStatement record = connection.prepareStatement("INSERT INTO SchemaVersion (Version, Description, AppliedOn) VALUES (?, ?, CURRENT_TIMESTAMP)")) {
+            for (String sql : migration.getStatements()) {
+                stmt.executeUpdate(sql);
+            }
+            record.setInt(1, migration.getVersion());
+            record.setString(2, migration.getDescription());
+            record.executeUpdate();
+            connection.commit();
+            log.info("Applied schema migration {}: {}", migration.getVersion(), migration.getDescription());
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Schema migration " + migration.getVersion() + " failed: " + migration.getDescription(), e);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package uk.co.asepstrath.bank;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/*
+In-memory ranking of accounts by how much they have spent, behind the admin top spenders page.
+Every account keeps a running total of its outgoing transactions, and a skip list keeps the accounts
+ordered by that total, so recording a spend is O(log n) and reading the top `size` accounts just walks
+the head of the list without taking a lock.
+With windowDays > 0 only spending in the last windowDays days counts: each account keeps one bucket
+per day of the window, and the totals are recomputed when the day rolls over (on the first read or
+spend of the new day).
+Writers (startup ingestion and transfers) are serialised; readers never block.
+ */
+public class SpendingLeaderboard {
+
+    public static final int DEFAULT_SIZE = 10;
+
+    public static final class Spender {
+        private final String id;
+        private final String name;
+        private final String postcode;
+        private final long spentPence;
+
+        private Spender(String id, String name, String postcode, long spentPence) {
+            this.id = id;
+            this.name = name;
+            this.postcode = postcode;
+            this.spentPence = spentPence;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getPostcode() {
+            return postcode;
+        }
+
+        public double getSpent() {
+            return Money.toPounds(spentPence);
+        }
+
+        public long getSpentPence() {
+            return spentPence;
+        }
+    }
+
+    private static final Comparator<Spender> RANKING = Comparator.comparingLong((Spender s) -> s.spentPence).reversed()
+            .thenComparing(s -> s.id);
+
+    private static final class AccountSpend {
+        private final long[] dayTotals; // indexed by epoch day modulo the window
+        private final long[] days;      // the epoch day each bucket currently holds
+        private Spender ranked;
+
+        private AccountSpend(Spender ranked, int windowDays) {
+            this.ranked = ranked;
+            this.dayTotals = new long[windowDays];
+            this.days = new long[windowDays];
+        }
+    }
+
+    private final int size;
+    private final int windowDays;
+    private final Clock clock;
+    private final Map<String, AccountSpend> accounts = new HashMap<>();
+    private final ConcurrentSkipListSet<Spender> ranking = new ConcurrentSkipListSet<>(RANKING);
+    private volatile long currentDay;
+
+    /*
+    size is how many accounts top() returns, windowDays is the ranking window in days (0 for all time).
+     */
+    public SpendingLeaderboard(int size, int windowDays, Clock clock) {
+        this.size = Math.max(1, size);
+        this.windowDays = Math.max(0, windowDays);
+        this.clock = clock;
+        this.currentDay = LocalDate.now(clock).toEpochDay();
+    }
+
+    public SpendingLeaderboard(int size, int windowDays) {
+        this(size, windowDays, Clock.systemDefaultZone());
+    }
+
+    // Replaces everything with the given accounts and their transaction history
+    public synchronized void rebuild(Collection<Account> allAccounts, Collection<Transaction> transactions) {
+        accounts.clear();
+        ranking.clear();
+        currentDay = LocalDate.now(clock).toEpochDay();
+        for (Account account : allAccounts) {
+            registerAccount(account.getId(), account.getName(), account.getPostcode());
+        }
+        for (Transaction transaction : transactions) {
+            recordSpend(transaction.getFrom(), transaction.getAmountPence(), transaction.getDate());
+        }
+    }
+
+    public synchronized void registerAccount(String id, String name, String postcode) {
+        if (!accounts.containsKey(id)) {
+            Spender spender = new Spender(id, name, postcode, 0);
+            accounts.put(id, new AccountSpend(spender, windowDays));
+            ranking.add(spender);
+        }
+    }
+
+    // date is a transaction date ("yyyy-MM-dd HH:mm"), spends from unknown accounts (or none) are ignored
+    public synchronized void recordSpend(String fromAccountId, long amountPence, String date) {
+        AccountSpend spend = fromAccountId == null ? null : accounts.get(fromAccountId);
+        if (spend == null) {
+            return;
+        }
+        if (windowDays == 0) {
+            rerank(spend, spend.ranked.spentPence + amountPence);
+            return;
+        }
+
+        if (LocalDate.now(clock).toEpochDay() != currentDay) {
+            rollOver(); // otherwise a spend made today would look like it's from the future
+        }
+        long day = epochDay(date);
+        if (day <= currentDay - windowDays || day > currentDay) {
+            return; // outside the window
+        }
+        int bucket = (int) Math.floorMod(day, (long) windowDays);
+        if (spend.days[bucket] != day) {
+            spend.days[bucket] = day;
+            spend.dayTotals[bucket] = 0;
+        }
+        spend.dayTotals[bucket] += amountPence;
+        rerank(spend, windowTotal(spend));
+    }
+
+    public List<Spender> top() {
+        if (windowDays > 0 && LocalDate.now(clock).toEpochDay() != currentDay) {
+            rollOver();
+        }
+        List<Spender> top = new ArrayList<>(size);
+        Iterator<Spender> iterator = ranking.iterator();
+        while (top.size() < size && iterator.hasNext()) {
+            Spender spender = iterator.next();
+            if (!containsAccount(top, spender.id)) { // mid-update an account can be listed twice
+                top.add(spender);
+            }
+        }
+        return top;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getWindowDays() {
+        return windowDays;
+    }
+
+    // A new day has started, so the oldest day drops out of every account's total
+    private synchronized void rollOver() {
+        long today = LocalDate.now(clock).toEpochDay();
+        if (today == currentDay) {
+            return; // another reader got here first
+        }
+        currentDay = today;
+        for (AccountSpend spend : accounts.values()) {
+            rerank(spend, windowTotal(spend));
+        }
+    }
+
+    private long windowTotal(AccountSpend spend) {
+        long total = 0;
+        for (int i = 0; i < windowDays; i++) {
+            if (spend.days[i] > currentDay - windowDays && spend.days[i] <= currentDay) {
+                total += spend.dayTotals[i];
+            }
+        }
+        return total;
+    }
+
+    private void rerank(AccountSpend spend, long spentPence) {
+        Spender previous = spend.ranked;
+        if (previous.spentPence == spentPence) {
+            return;
+        }
+        Spender updated = new Spender(previous.id, previous.name, previous.postcode, spentPence);
+        // top() walks a weakly consistent view, so while this runs it may see the account at its old total,
+        // its new one, both (it keeps the first) or neither; the next read sees the settled ranking
+        ranking.add(updated);
+        ranking.remove(previous);
+        spend.ranked = updated;
+    }
+
+    private static boolean containsAccount(List<Spender> spenders, String id) {
+        for (Spender spender : spenders) {
+            if (spender.id.equals(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long epochDay(String date) {
+        try {
+            return LocalDate.parse(date.length() > 10 ? date.substring(0, 10) : date).toEpochDay();
+        } catch (DateTimeParseException | NullPointerException e) {
+            return Long.MIN_VALUE; // never inside a window
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package uk.co.asepstrath.bank;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/*
+Binary copy of the ingested accounts and transactions, so a restart can skip the upstream fetch.
+
+Layout (big endian):
+  header       magic, version, created (epoch millis), account count, transaction count,
+               string count, string table offset (long), padded to HEADER_BYTES
+  accounts     RECORD_BYTES each: id (two longs), starting balance in pence, name, postcode, flags
+  transactions RECORD_BYTES each: id (two longs), amount in pence, date, from, to, type
+  strings      each one an int byte length and its UTF-8 bytes
+
+Text fields are indexes into the string table (-1 for null) and every distinct string is stored once,
+so account ids, business codes, dates and types that repeat across thousands of transactions cost four
+bytes a time. Records are fixed width, so reading is a walk along a memory-mapped file with absolute gets.
+A transaction without an id is written as the nil UUID and read back as null.
+ */
+public final class StartupSnapshot {
+
+    static final int MAGIC = 0x53424E4B; // "SBNK"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 40;
+    static final int RECORD_BYTES = 40;
+
+    private static final int ROUND_UP_ENABLED = 1;
+    private static final int NULL_STRING = -1;
+
+    public static final class Contents {
+        private final long createdMillis;
+        private final List<Account> accounts;
+        private final List<Transaction> transactions;
+
+        private Contents(long createdMillis, List<Account> accounts, List<Transaction> transactions) {
+            this.createdMillis = createdMillis;
+            this.accounts = accounts;
+            this.transactions = transactions;
+        }
+
+        public long getCreatedMillis() {
+            return createdMillis;
+        }
+
+        public List<Account> getAccounts() {
+            return accounts;
+        }
+
+        public List<Transaction> getTransactions() {
+            return transactions;
+        }
+    }
+
+    private StartupSnapshot() {
+    }
+
+    // Written next to the target and moved into place, so a crash mid-write never leaves a torn snapshot
+    public static void write(Path file, List<Account> accounts, List<Transaction> transactions, long createdMillis) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (Account account : accounts) {
+            index(strings, account.getName());
+            index(strings, account.getPostcode());
+        }
+        for (Transaction transaction : transactions) {
+            index(strings, transaction.getDate());
+            index(strings, transaction.getFrom());
+            index(strings, transaction.getTo());
+            index(strings, transaction.getType());
+        }
+        long stringsOffset = HEADER_BYTES + (long) RECORD_BYTES * (accounts.size() + transactions.size());
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(createdMillis);
+            out.writeInt(accounts.size());
+            out.writeInt(transactions.size());
+            out.writeInt(strings.size());
+            out.writeLong(stringsOffset);
+            out.write(new byte[HEADER_BYTES - 36]);
+
+            for (Account account : accounts) {
+                UUID id = UUID.fromString(account.getId());
+                out.writeLong(id.getMostSignificantBits());
+                out.writeLong(id.getLeastSignificantBits());
+                out.writeLong(account.getBalancePence());
+                out.writeInt(index(strings, account.getName()));
+                out.writeInt(index(strings, account.getPostcode()));
+                out.writeInt(account.isRoundUpEnabled() ? ROUND_UP_ENABLED : 0);
+                out.writeInt(0);
+            }
+            for (Transaction transaction : transactions) {
+                UUID id = transaction.getTransactionId();
+                out.writeLong(id == null ? 0 : id.getMostSignificantBits());
+                out.writeLong(id == null ? 0 : id.getLeastSignificantBits());
+                out.writeLong(transaction.getAmountPence());
+                out.writeInt(index(strings, transaction.getDate()));
+                out.writeInt(index(strings, transaction.getFrom()));
+                out.writeInt(index(strings, transaction.getTo()));
+                out.writeInt(index(strings, transaction.getType()));
+            }
+            for (String value : strings.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Contents read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long createdMillis = checkHeader(buffer, file);
+            int accountCount = buffer.getInt(16);
+            int transactionCount = buffer.getInt(20);
+            String[] strings = readStrings(buffer, buffer.getInt(24), buffer.getLong(28));
+
+            List<Account> accounts = new ArrayList<>(accountCount);
+            int position = HEADER_BYTES;
+            for (int i = 0; i < accountCount; i++, position += RECORD_BYTES) {
+                accounts.add(Account.ofPence(new UUID(buffer.getLong(position), buffer.getLong(position + 8)),
+                        string(strings, buffer.getInt(position + 24)), buffer.getLong(position + 16),
+                        (buffer.getInt(position + 32) & ROUND_UP_ENABLED) != 0, string(strings, buffer.getInt(position + 28))));
+            }
+
+            List<Transaction> transactions = new ArrayList<>(transactionCount);
+            for (int i = 0; i < transactionCount; i++, position += RECORD_BYTES) {
+                long mostSignificant = buffer.getLong(position);
+                long leastSignificant = buffer.getLong(position + 8);
+                UUID id = mostSignificant == 0 && leastSignificant == 0 ? null : new UUID(mostSignificant, leastSignificant);
+                transactions.add(Transaction.ofPence(id, buffer.getLong(position + 16), string(strings, buffer.getInt(position + 24)),
+                        string(strings, buffer.getInt(position + 28)), string(strings, buffer.getInt(position + 32)),
+                        string(strings, buffer.getInt(position + 36))));
+            }
+            return new Contents(createdMillis, accounts, transactions);
+        } catch (RuntimeException e) { // out of bounds reads, bad string lengths or offsets
+            throw new IOException("Snapshot " + file + " is truncated or corrupt", e);
+        }
+    }
+
+    // When the snapshot was taken, or -1 if there isn't a readable one
+    public static long createdMillis(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the header is full or the file ends
+            }
+            header.flip();
+            return checkHeader(header, file);
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static long checkHeader(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a startup snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " is snapshot version " + buffer.getInt(4) + ", expected " + VERSION);
+        }
+        return buffer.getLong(8);
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, int count, long offset) {
+        String[] strings = new String[count];
+        ByteBuffer table = buffer.duplicate().position(Math.toIntExact(offset));
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[table.getInt()];
+            table.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static String string(String[] strings, int index) {
+        return index == NULL_STRING ? null : strings[index];
+    }
+
+    private static int index(Map<String, Integer> strings, String value) {
+        if (value == null) {
+            return NULL_STRING;
+        }
+        Integer index = strings.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.put(value, index);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,160 @@
+package uk.co.asepstrath.bank;
+
+import org.slf4j.Logger;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/*
+Progress of the startup load, stage by stage, behind /health/ready and ReadinessFilter.
+Stages that don't depend on each other run at the same time (see App.onStart), so several can be
+RUNNING at once. The instance is ready once every stage has finished and none of the required ones
+failed: without the schema, the accounts (and the default users created with them), the transactions or
+the replay there is nothing worth serving, so a failure there keeps /health/ready and ReadinessFilter at
+503 and is shown in the report. A failed businesses load only costs category names, so it doesn't.
+ */
+public class StartupStages implements Metrics.Collector {
+
+    // In dependency order, all of them wait for SCHEMA and REPLAY waits for the rest
+    public enum Stage {
+        SCHEMA(true),
+        BUSINESSES(false),
+        ACCOUNTS(true),
+        TRANSACTIONS(true),
+        REPLAY(true);
+
+        private final boolean required;
+
+        Stage(boolean required) {
+            this.required = required;
+        }
+
+        public boolean isRequired() {
+            return required;
+        }
+    }
+
+    public enum State { PENDING, RUNNING, DONE, FAILED }
+
+    // Work for one stage, which may wait on others before it starts its own
+    public interface Work {
+        void run() throws Exception;
+    }
+
+    private static final class Progress {
+        private volatile State state = State.PENDING;
+        private volatile long startNanos;
+        private volatile long elapsedNanos;
+        private volatile String error;
+    }
+
+    private final Map<Stage, Progress> stages = new EnumMap<>(Stage.class);
+    private final Logger log;
+    private final long createdNanos = System.nanoTime();
+    private volatile long finishedNanos = -1;
+
+    public StartupStages(Logger log) {
+        this.log = log;
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new Progress());
+        }
+    }
+
+    /*
+    Runs a stage on the calling thread, recording when it starts and how it ends. Returns false (after
+    recording why) if it failed, so the caller can carry on with whatever else it can still load.
+     */
+    public boolean run(Stage stage, Work work) {
+        Progress progress = stages.get(stage);
+        progress.startNanos = System.nanoTime();
+        progress.state = State.RUNNING;
+        boolean succeeded = false;
+        try {
+            work.run();
+            succeeded = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.error = "interrupted";
+            log.error("Interrupted during startup stage " + stage, e);
+        } catch (Exception e) {
+            progress.error = e.toString();
+            log.error("Startup stage " + stage + " failed", e);
+        } finally {
+            progress.elapsedNanos = System.nanoTime() - progress.startNanos;
+            progress.state = succeeded ? State.DONE : State.FAILED;
+            if (isFinished() && finishedNanos < 0) {
+                finishedNanos = System.nanoTime();
+            }
+        }
+        return succeeded;
+    }
+
+    private boolean isFinished() {
+        for (Progress progress : stages.values()) {
+            if (progress.state == State.PENDING || progress.state == State.RUNNING) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isReady() {
+        return finishedNanos >= 0 && !hasFailed();
+    }
+
+    // True once a required stage has failed, the instance will never become ready
+    public boolean hasFailed() {
+        for (Map.Entry<Stage, Progress> entry : stages.entrySet()) {
+            if (entry.getKey().isRequired() && entry.getValue().state == State.FAILED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public State getState(Stage stage) {
+        return stages.get(stage).state;
+    }
+
+    public String getError(Stage stage) {
+        return stages.get(stage).error;
+    }
+
+    // Plain text body of /health/ready: overall status, then one line per stage
+    public String report() {
+        StringBuilder out = new StringBuilder();
+        long now = System.nanoTime();
+        String status = hasFailed() ? "failed" : isReady() ? "ready" : "starting";
+        out.append(status).append(String.format(" after %d ms%n",
+                ((finishedNanos >= 0 ? finishedNanos : now) - createdNanos) / 1_000_000));
+        for (Map.Entry<Stage, Progress> entry : stages.entrySet()) {
+            Progress progress = entry.getValue();
+            State state = progress.state;
+            StringBuilder line = new StringBuilder(String.format("%-13s %-8s", entry.getKey().name().toLowerCase(), state.name().toLowerCase()));
+            if (state == State.RUNNING) {
+                line.append(String.format(" %d ms so far", (now - progress.startNanos) / 1_000_000));
+            } else if (state != State.PENDING) {
+                line.append(String.format(" %d ms", progress.elapsedNanos / 1_000_000));
+            }
+            if (progress.error != null) {
+                line.append("  ").append(progress.error);
+            }
+            if (state == State.FAILED && entry.getKey().isRequired()) {
+                line.append("  (required, not serving)");
+            }
+            out.append(line.toString().stripTrailing()).append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.gauge("scotbank_startup_ready", "1 once every startup stage has finished and none of the required ones failed", isReady() ? 1 : 0);
+        out.header("scotbank_startup_stage_state", "gauge", "Startup stage state: 0 pending, 1 running, 2 done, 3 failed");
+        stages.forEach((stage, progress) -> out.sample("scotbank_startup_stage_state",
+                Metrics.Writer.labels("stage", stage.name().toLowerCase()), progress.state.ordinal()));
+        out.header("scotbank_startup_stage_seconds", "gauge", "How long each finished startup stage took");
+        stages.forEach((stage, progress) -> out.sample("scotbank_startup_stage_seconds",
+                Metrics.Writer.labels("stage", stage.name().toLowerCase()), progress.elapsedNanos / 1e9));
+    }
+}
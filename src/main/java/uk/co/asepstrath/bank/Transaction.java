@@ -5,7 +5,7 @@ import java.util.UUID;
 
 public class Transaction {
     private UUID transactionId;
-    private double amount;
+    private long amountPence;
     private String date;
     private String from;
     private String to;
@@ -13,13 +13,20 @@ public class Transaction {
 
     public Transaction(UUID transactionId, double amount, String date, String from, String to, String type) {
         this.transactionId = transactionId;
-        this.amount = amount;
+        this.amountPence = Money.ofPounds(amount);
         this.date = date;
         this.from = from;
         this.to = to;
         this.type = type;
     }
 
+    // Used by the feed parser and the database, which both already have the amount in pence
+    public static Transaction ofPence(UUID transactionId, long amountPence, String date, String from, String to, String type) {
+        Transaction transaction = new Transaction(transactionId, 0, date, from, to, type);
+        transaction.amountPence = amountPence;
+        return transaction;
+    }
+
     public UUID getTransactionId() {
         return transactionId;
     }
@@ -29,11 +36,15 @@ public class Transaction {
     }
 
     public double getAmount() {
-        return amount;
+        return Money.toPounds(amountPence);
+    }
+
+    public long getAmountPence() {
+        return amountPence;
     }
 
     public void setAmount(double amount) {
-        this.amount = amount;
+        this.amountPence = Money.ofPounds(amount);
     }
 
     public String getDate() {
@@ -70,6 +81,6 @@ public class Transaction {
 
     @Override
     public String toString() {
-        return "Transaction ID: " + transactionId + " | Amount: " + amount + " | Date: " + date + " | From: " + from + " | To: " + to + " | Type: " + type;
+        return "Transaction ID: " + transactionId + " | Amount: " + getAmount() + " | Date: " + date + " | From: " + from + " | To: " + to + " | Type: " + type;
     }
 }
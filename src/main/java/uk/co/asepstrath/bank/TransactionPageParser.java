@@ -0,0 +1,107 @@
+package uk.co.asepstrath.bank;
+
+import org.slf4j.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/*
+Streaming parser for the /api/transactions XML pages.
+It pulls events straight off the response stream and builds each Transaction as soon as its
+<results> element closes, so no DOM or intermediate String is held for the page.
+ */
+public class TransactionPageParser {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private final Logger log;
+
+    public TransactionPageParser(Logger log) {
+        this.log = log;
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    public List<Transaction> parse(InputStream in, int pageNumber) throws XMLStreamException {
+        List<Transaction> transactions = new ArrayList<>();
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && "results".equals(reader.getLocalName())
+                        && isTransactionModel(reader)) {
+                    Transaction transaction = readTransaction(reader, pageNumber);
+                    if (transaction != null) {
+                        transactions.add(transaction);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return transactions;
+    }
+
+    // Only <results xsi:type="transactionModel"> elements hold transactions
+    private boolean isTransactionModel(XMLStreamReader reader) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if ("type".equals(reader.getAttributeLocalName(i)) && "xsi".equals(reader.getAttributePrefix(i))) {
+                return "transactionModel".equals(reader.getAttributeValue(i));
+            }
+        }
+        return false;
+    }
+
+    // Reads the child elements of the current <results> element, leaving the reader on its end tag
+    private Transaction readTransaction(XMLStreamReader reader, int pageNumber) throws XMLStreamException {
+        String id = null;
+        String from = null;
+        String to = null;
+        String amount = null;
+        String timestamp = null;
+        String type = null;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                String text = reader.getElementText().trim(); // consumes the matching end tag
+                switch (name) {
+                    case "id" -> id = text;
+                    case "from" -> from = text;
+                    case "to" -> to = text;
+                    case "amount" -> amount = text;
+                    case "timestamp" -> timestamp = text;
+                    case "type" -> type = text;
+                    default -> { } // ignore fields we don't store
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break; // </results>
+            }
+        }
+
+        if (timestamp == null || type == null) {
+            log.error("Error processing transaction on page " + pageNumber + ": missing timestamp or type");
+            return null;
+        }
+
+        try {
+            return Transaction.ofPence(UUID.fromString(id), Money.parse(amount), timestamp, from, to, type);
+        } catch (RuntimeException e) {
+            log.error("Error processing transaction on page " + pageNumber + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
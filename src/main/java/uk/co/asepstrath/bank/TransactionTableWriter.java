@@ -0,0 +1,106 @@
+package uk.co.asepstrath.bank;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/*
+Writes an admin transaction table straight to the response, row by row.
+It produces the same markup as adminTransactions.hbs / adminSanctioned.hbs, but never holds more
+than one row in memory, and flushes every CHUNK_ROWS rows so the browser starts rendering straight away.
+ */
+public class TransactionTableWriter {
+
+    static final int CHUNK_ROWS = 500;
+
+    private final Writer out;
+    private int rows;
+
+    public TransactionTableWriter(Writer out) {
+        this.out = out;
+    }
+
+    public void writeHeader(String heading, String activePage) throws IOException {
+        out.write("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n"
+                + "    <meta charset=\"UTF-8\">\n"
+                + "    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n"
+                + "    <title>Dashboard</title>\n"
+                + "    <link rel=\"stylesheet\" type=\"text/css\" href=\"/assets/dashstyles.css\">\n"
+                + "</head>\n<body>\n    <header>\n        <h1>Scotbank</h1>\n    </header>\n\n    <ul>\n");
+        navItem("/scotbank/adminDashboard", "Dashboard", activePage);
+        navItem("/scotbank/adminAccounts", "Accounts", activePage);
+        navItem("/scotbank/adminTransactions", "Transactions", activePage);
+        navItem("/scotbank/adminSanctioned", "Sanctioned", activePage);
+        navItem("/scotbank/adminTen", "Top Spenders", activePage);
+        out.write("    </ul>\n        <section id=\"transactions\">\n            <h2>" + escape(heading) + "</h2>\n"
+                + "            <table>\n                <thead>\n                    <tr>\n"
+                + "                        <th>ID</th>\n                        <th>Date</th>\n                        <th>From</th>\n"
+                + "                        <th>To</th>\n                        <th>Amount</th>\n                        <th>Type</th>\n"
+                + "                    </tr>\n                </thead>\n                <tbody>\n");
+        out.flush(); // get the page shell to the browser before the query starts returning rows
+    }
+
+    public void writeRow(Transaction transaction) throws IOException {
+        out.write("                    <tr class=\"transaction-box\"><td>");
+        out.write(escape(String.valueOf(transaction.getTransactionId())));
+        out.write("</td><td>");
+        out.write(escape(transaction.getDate()));
+        out.write("</td><td>");
+        out.write(escape(transaction.getFrom()));
+        out.write("</td><td>");
+        out.write(escape(transaction.getTo()));
+        out.write("</td><td>");
+        out.write(String.valueOf(transaction.getAmount()));
+        out.write("</td><td>");
+        out.write(escape(transaction.getType()));
+        out.write("</td></tr>\n");
+        if (++rows % CHUNK_ROWS == 0) {
+            out.flush();
+        }
+    }
+
+    public void writeFooter() throws IOException {
+        out.write("                </tbody>\n            </table>\n        </section>\n\n"
+                + "        <a class=\"logout\" href=\"/scotbank/login\">Logout</a>\n</body>\n</html>\n");
+        out.flush();
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    private void navItem(String href, String label, String activePage) throws IOException {
+        if (label.equals(activePage)) {
+            out.write("        <li><a class=\"active\">" + label + "</a></li>\n");
+        } else {
+            out.write("        <li><a href=\"" + href + "\">" + label + "</a></li>\n");
+        }
+    }
+
+    static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            String replacement = switch (value.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '"' -> "&quot;";
+                case '\'' -> "&#x27;";
+                default -> null;
+            };
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(value.charAt(i));
+                }
+            }
+        }
+        return escaped == null ? value : escaped.toString();
+    }
+}
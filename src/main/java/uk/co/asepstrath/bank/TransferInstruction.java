@@ -0,0 +1,104 @@
+package uk.co.asepstrath.bank;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/*
+One line of a bulk transfer request: move amountPence from one account to another.
+Lines that can't be understood are kept (with a null account or a zero amount) rather than dropped,
+so every submitted item gets a result back in the same position it was sent.
+ */
+public class TransferInstruction {
+
+    private final UUID from;
+    private final UUID to;
+    private final long amountPence;
+
+    public TransferInstruction(UUID from, UUID to, long amountPence) {
+        this.from = from;
+        this.to = to;
+        this.amountPence = amountPence;
+    }
+
+    public UUID getFrom() {
+        return from;
+    }
+
+    public UUID getTo() {
+        return to;
+    }
+
+    public long getAmountPence() {
+        return amountPence;
+    }
+
+    public boolean isValid() {
+        return from != null && to != null && amountPence > 0 && !from.equals(to);
+    }
+
+    // from,to,amount - one transfer per line, amounts in pounds; a header line and blank lines are skipped
+    public static List<TransferInstruction> parseCsv(String body) {
+        List<TransferInstruction> instructions = new ArrayList<>();
+        for (String line : body.split("\r?\n")) {
+            if (line.isBlank() || line.toLowerCase().startsWith("from,")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length < 3) {
+                instructions.add(new TransferInstruction(null, null, 0));
+                continue;
+            }
+            instructions.add(new TransferInstruction(parseId(fields[0]), parseId(fields[1]), parseAmount(fields[2])));
+        }
+        return instructions;
+    }
+
+    // [{"from": "...", "to": "...", "amount": 12.50}, ...] - amount may be a number or a string
+    public static List<TransferInstruction> parseJson(String body) {
+        JsonArray items;
+        try (JsonReader reader = Json.createReader(new StringReader(body))) {
+            items = reader.readArray();
+        } catch (JsonException | IllegalStateException e) {
+            throw new IllegalArgumentException("Bulk transfer body must be a JSON array", e);
+        }
+
+        List<TransferInstruction> instructions = new ArrayList<>(items.size());
+        for (JsonValue item : items) {
+            if (item.getValueType() != JsonValue.ValueType.OBJECT) {
+                instructions.add(new TransferInstruction(null, null, 0));
+                continue;
+            }
+            JsonObject object = (JsonObject) item;
+            JsonValue amount = object.get("amount");
+            String amountText = amount == null ? null
+                    : amount.getValueType() == JsonValue.ValueType.STRING ? object.getString("amount") : amount.toString();
+            instructions.add(new TransferInstruction(parseId(object.getString("from", null)),
+                    parseId(object.getString("to", null)), parseAmount(amountText)));
+        }
+        return instructions;
+    }
+
+    private static UUID parseId(String value) {
+        try {
+            return value == null ? null : UUID.fromString(value.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long parseAmount(String value) {
+        try {
+            return value == null ? 0 : Money.parse(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package uk.co.asepstrath.bank;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Counters for DatabaseController.transferFunds, shared by every controller instance.
+A conflict is an attempt that lost an optimistic version check (or hit a lock timeout) and was
+rolled back; a retry is each extra attempt made after one. Transfers that are still conflicting
+after the last attempt count as conflicted.
+ */
+public class TransferMetrics implements Metrics.Collector {
+
+    private static final TransferMetrics SHARED = new TransferMetrics();
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder insufficientFunds = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder conflicted = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder completedPence = new LongAdder();
+
+    public static TransferMetrics shared() {
+        return SHARED;
+    }
+
+    void record(DatabaseController.TransferResult result, long amountPence) {
+        switch (result) {
+            case COMPLETED -> {
+                completed.increment();
+                completedPence.add(amountPence);
+            }
+            case INSUFFICIENT_FUNDS -> insufficientFunds.increment();
+            case CONFLICT -> conflicted.increment();
+            case ACCOUNT_NOT_FOUND, INVALID, FAILED -> failed.increment();
+        }
+    }
+
+    void conflict() {
+        conflicts.increment();
+    }
+
+    void retry() {
+        retries.increment();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getInsufficientFunds() {
+        return insufficientFunds.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getConflicted() {
+        return conflicted.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getCompletedPence() {
+        return completedPence.sum();
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.header("scotbank_transfers_total", "counter", "Transfers by final result");
+        out.sample("scotbank_transfers_total", "result=\"completed\"", completed.sum());
+        out.sample("scotbank_transfers_total", "result=\"insufficient_funds\"", insufficientFunds.sum());
+        out.sample("scotbank_transfers_total", "result=\"conflicted\"", conflicted.sum());
+        out.sample("scotbank_transfers_total", "result=\"failed\"", failed.sum());
+        out.counter("scotbank_transfer_amount_pence_total", "Money moved by completed transfers, in pence", completedPence.sum());
+        out.counter("scotbank_transfer_conflicts_total", "Transfer attempts rolled back by a version check or lock timeout", conflicts.sum());
+        out.counter("scotbank_transfer_retries_total", "Transfer attempts made after a conflict", retries.sum());
+    }
+}
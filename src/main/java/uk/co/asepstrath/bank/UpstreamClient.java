@@ -0,0 +1,260 @@
+package uk.co.asepstrath.bank;
+
+import org.slf4j.Logger;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+
+/*
+The one HTTP client behind every upstream API call. A single java.net.http.HttpClient keeps its connections
+alive and reuses them across the concurrent page fetches and every sync run. Responses are requested
+gzipped and handed to the caller's parser as a stream, so a page is never held as a String.
+The OAuth2 token is fetched once and reused until shortly before it expires; a 401 drops it and fetches
+a new one. The refresh holds a ReentrantLock rather than a monitor, so neither the virtual thread doing
+the HTTP call and retry sleeps nor those waiting for it pin a carrier thread.
+Connection failures, timeouts, 429s and 5xx responses are retried with jittered exponential backoff,
+up to attempts tries per request, so one bad response no longer costs a whole page.
+ */
+public class UpstreamClient implements Metrics.Collector {
+
+    public static final String DEFAULT_BASE_URL = "https://api.asep-strath.co.uk";
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5_000;
+    public static final int DEFAULT_REQUEST_TIMEOUT_MILLIS = 30_000;
+    public static final int DEFAULT_ATTEMPTS = 4;
+    static final long RETRY_BACKOFF_MILLIS = 200;
+    private static final long TOKEN_EXPIRY_MARGIN_MILLIS = 30_000;
+    private static final long DEFAULT_TOKEN_LIFETIME_SECONDS = 300; // when the token response doesn't say
+
+    // Reads a response body, which is closed afterwards by the client
+    public interface BodyParser<T> {
+        T parse(InputStream body) throws Exception;
+    }
+
+    private static final class Token {
+        private final String value;
+        private final long expiresAtMillis;
+
+        private Token(String value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private final HttpClient client;
+    private final URI baseUri;
+    private final String basicAuth;
+    private final Duration requestTimeout;
+    private final int attempts;
+    private final Logger log;
+    private volatile Token token;
+    private final ReentrantLock tokenLock = new ReentrantLock();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder tokensFetched = new LongAdder();
+
+    public UpstreamClient(String baseUrl, String clientId, String clientSecret, int connectTimeoutMillis,
+                          int requestTimeoutMillis, int attempts, Logger log) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .build();
+        this.baseUri = URI.create(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/");
+        this.basicAuth = Base64.getEncoder().encodeToString((clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8));
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+        this.attempts = Math.max(1, attempts);
+        this.log = log;
+    }
+
+    // GET an API path (relative to the base URL, e.g. "api/transactions?page=3") with the bearer token
+    public <T> T get(String path, BodyParser<T> parser) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            Token current = currentToken();
+            HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(path))
+                    .timeout(requestTimeout)
+                    .header("Authorization", "Bearer " + current.value)
+                    .header("Accept-Encoding", "gzip")
+                    .GET()
+                    .build();
+            try {
+                return send(request, parser);
+            } catch (UnauthorizedException e) {
+                invalidate(current);
+                if (attempt >= attempts) {
+                    failures.increment();
+                    throw e;
+                }
+                retries.increment(); // a fresh token straight away, no backoff
+            } catch (IOException e) {
+                retryOrThrow(request, attempt, e);
+            }
+        }
+    }
+
+    // The cached token, or a new one if there isn't one or it's about to expire
+    private Token currentToken() throws IOException, InterruptedException {
+        Token current = token;
+        if (current != null && System.currentTimeMillis() < current.expiresAtMillis) {
+            return current;
+        }
+        tokenLock.lockInterruptibly();
+        try {
+            current = token;
+            if (current != null && System.currentTimeMillis() < current.expiresAtMillis) {
+                return current; // another thread fetched it while we waited
+            }
+            token = fetchToken();
+            return token;
+        } finally {
+            tokenLock.unlock();
+        }
+    }
+
+    private Token fetchToken() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("oauth2/token"))
+                .timeout(requestTimeout)
+                .header("Authorization", "Basic " + basicAuth)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Accept-Encoding", "gzip")
+                .POST(HttpRequest.BodyPublishers.ofString("grant_type=client_credentials"))
+                .build();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Token fetched = send(request, body -> {
+                    try (JsonReader reader = Json.createReader(body)) {
+                        JsonObject json = reader.readObject();
+                        long lifetimeSeconds = json.containsKey("expires_in") ? json.getJsonNumber("expires_in").longValue() : DEFAULT_TOKEN_LIFETIME_SECONDS;
+                        long lifetimeMillis = Math.max(0, TimeUnit.SECONDS.toMillis(lifetimeSeconds) - TOKEN_EXPIRY_MARGIN_MILLIS);
+                        return new Token(json.getString("access_token"), System.currentTimeMillis() + lifetimeMillis);
+                    }
+                });
+                tokensFetched.increment();
+                return fetched;
+            } catch (UnauthorizedException e) {
+                failures.increment();
+                throw new IOException("Upstream rejected the client credentials", e); // retrying won't help
+            } catch (IOException e) {
+                retryOrThrow(request, attempt, e);
+            }
+        }
+    }
+
+    private void invalidate(Token rejected) {
+        tokenLock.lock();
+        try {
+            if (token == rejected) {
+                token = null;
+            }
+        } finally {
+            tokenLock.unlock();
+        }
+    }
+
+    private <T> T send(HttpRequest request, BodyParser<T> parser) throws IOException, InterruptedException {
+        requests.increment();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = decode(response)) {
+            int status = response.statusCode();
+            if (status == 401) {
+                throw new UnauthorizedException(request);
+            }
+            if (status != 200) {
+                throw new StatusException(request, status);
+            }
+            return parser.parse(body);
+        } catch (IOException | InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            // Parsers report a connection dropped mid-body as their own exception wrapping the IOException
+            if (e.getCause() instanceof IOException cause) {
+                throw new IOException("Reading " + request.uri() + " failed: " + cause.getMessage(), cause);
+            }
+            throw new MalformedResponseException(request, e);
+        }
+    }
+
+    private static InputStream decode(HttpResponse<InputStream> response) throws IOException {
+        boolean gzipped = response.headers().firstValue("Content-Encoding").map("gzip"::equalsIgnoreCase).orElse(false);
+        return gzipped ? new GZIPInputStream(response.body(), 1 << 16) : response.body();
+    }
+
+    // Sleeps before the next attempt if this failure is worth retrying, otherwise rethrows it
+    private void retryOrThrow(HttpRequest request, int attempt, IOException e) throws IOException, InterruptedException {
+        if (attempt >= attempts || !isRetryable(e)) {
+            failures.increment();
+            throw e;
+        }
+        retries.increment();
+        long ceiling = RETRY_BACKOFF_MILLIS << (attempt - 1);
+        long sleep = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+        log.warn("{} {} failed (attempt {} of {}), retrying in {} ms: {}", request.method(), request.uri(), attempt, attempts, sleep, e.toString());
+        Thread.sleep(sleep);
+    }
+
+    private static boolean isRetryable(IOException e) {
+        if (e instanceof StatusException status) {
+            return status.status == 429 || status.status >= 500;
+        }
+        return !(e instanceof MalformedResponseException); // connection failures and timeouts
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getTokensFetched() {
+        return tokensFetched.sum();
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.counter("scotbank_upstream_requests_total", "HTTP requests sent to the upstream API, retries included", requests.sum());
+        out.counter("scotbank_upstream_retries_total", "Upstream requests retried after a failure", retries.sum());
+        out.counter("scotbank_upstream_failures_total", "Upstream calls that failed after every attempt", failures.sum());
+        out.counter("scotbank_upstream_tokens_fetched_total", "OAuth2 tokens fetched from upstream", tokensFetched.sum());
+    }
+
+    static class StatusException extends IOException {
+        final int status;
+
+        StatusException(HttpRequest request, int status) {
+            super(request.method() + " " + request.uri() + " returned " + status);
+            this.status = status;
+        }
+    }
+
+    static final class UnauthorizedException extends StatusException {
+        UnauthorizedException(HttpRequest request) {
+            super(request, 401);
+        }
+    }
+
+    static final class MalformedResponseException extends IOException {
+        MalformedResponseException(HttpRequest request, Exception cause) {
+            super("Could not parse the response from " + request.uri(), cause);
+        }
+    }
+}
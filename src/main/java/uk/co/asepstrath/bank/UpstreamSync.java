@@ -0,0 +1,151 @@
+package uk.co.asepstrath.bank;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Keeps the database in step with the upstream API after startup, run every upstream.syncSeconds on App's
+scheduler. Each run fetches the account list and the transaction pages from the last page that had
+anything on it (which may have filled up since) until a page comes back empty or missing, at most
+maxPages of them, and hands the lot to DatabaseController.mergeUpstream. Records that are already
+loaded are skipped by the merge, so re-reading the last page costs a round trip and nothing else.
+Lag is the time since the data was last known to be current: the startup load, then each successful run.
+ */
+public class UpstreamSync implements Runnable, Metrics.Collector {
+
+    public static final int DEFAULT_MAX_PAGES = 20;
+
+    // Where the records come from, App's fetch in production
+    public interface Source {
+        List<Account> fetchAccounts() throws Exception;
+
+        List<Transaction> fetchTransactionPage(int page) throws Exception;
+    }
+
+    private final DatabaseController database;
+    private final Source source;
+    private final int maxPages;
+    private final Logger log;
+    private volatile int lastPage;
+    private volatile long lastSyncMillis;
+    private volatile long lastAttemptMillis;
+    private volatile long lastDurationNanos;
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder accountsMerged = new LongAdder();
+    private final LongAdder transactionsMerged = new LongAdder();
+
+    // lastPage is the last page loaded at startup and loadedMillis when that data was fetched
+    public UpstreamSync(DatabaseController database, Source source, int lastPage, long loadedMillis, int maxPages, Logger log) {
+        this.database = database;
+        this.source = source;
+        this.lastPage = Math.max(0, lastPage);
+        this.lastSyncMillis = loadedMillis;
+        this.maxPages = Math.max(1, maxPages);
+        this.log = log;
+    }
+
+    // Never throws, an exception escaping a scheduled task would stop every later run
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        try {
+            sync();
+        } catch (Exception e) {
+            failed.increment();
+            log.warn("Upstream sync failed, will retry on the next run", e);
+        } finally {
+            lastAttemptMillis = System.currentTimeMillis();
+            lastDurationNanos = System.nanoTime() - start;
+        }
+    }
+
+    private void sync() throws Exception {
+        long start = System.nanoTime();
+        long startedMillis = System.currentTimeMillis();
+        List<Account> accounts = source.fetchAccounts();
+
+        List<Transaction> transactions = new ArrayList<>();
+        int firstPage = lastPage;
+        int newLastPage = lastPage;
+        for (int page = firstPage; page < firstPage + maxPages; page++) {
+            List<Transaction> pageTransactions;
+            try {
+                pageTransactions = source.fetchTransactionPage(page);
+            } catch (Exception e) {
+                if (page == firstPage) {
+                    throw e;
+                }
+                // Past the end the API may answer with an error rather than an empty page
+                log.debug("Stopping upstream sync at page {}: {}", page, e.toString());
+                break;
+            }
+            if (pageTransactions.isEmpty()) {
+                break;
+            }
+            transactions.addAll(pageTransactions);
+            newLastPage = page;
+        }
+
+        DatabaseController.MergeResult result = database.mergeUpstream(accounts, transactions);
+        if (result == null) {
+            throw new IllegalStateException("merge of " + transactions.size() + " upstream transactions was rolled back");
+        }
+        lastPage = newLastPage;
+        lastSyncMillis = startedMillis;
+        succeeded.increment();
+        accountsMerged.add(result.getNewAccounts());
+        transactionsMerged.add(result.getNewTransactions());
+        log.info("Upstream sync: {} new accounts and {} new transactions from pages {}-{} in {} ms", result.getNewAccounts(),
+                result.getNewTransactions(), firstPage, newLastPage, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public int getLastPage() {
+        return lastPage;
+    }
+
+    // When the last successful run started (or the startup data was fetched), epoch millis
+    public long getLastSyncMillis() {
+        return lastSyncMillis;
+    }
+
+    public long getLagMillis() {
+        return Math.max(0, System.currentTimeMillis() - lastSyncMillis);
+    }
+
+    public long getSucceeded() {
+        return succeeded.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getAccountsMerged() {
+        return accountsMerged.sum();
+    }
+
+    public long getTransactionsMerged() {
+        return transactionsMerged.sum();
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.gauge("scotbank_upstream_sync_last_success_timestamp_seconds", "When the data was last brought up to date with upstream",
+                lastSyncMillis / 1000.0);
+        out.gauge("scotbank_upstream_sync_lag_seconds", "Time since the data was last brought up to date with upstream",
+                getLagMillis() / 1000.0);
+        out.gauge("scotbank_upstream_sync_last_attempt_timestamp_seconds", "When the last sync run finished, successful or not",
+                lastAttemptMillis / 1000.0);
+        out.gauge("scotbank_upstream_sync_last_duration_seconds", "How long the last sync run took", lastDurationNanos / 1e9);
+        out.gauge("scotbank_upstream_sync_page", "Last upstream transaction page with records on it", lastPage);
+        out.header("scotbank_upstream_sync_runs_total", "counter", "Sync runs, by outcome");
+        out.sample("scotbank_upstream_sync_runs_total", "outcome=\"succeeded\"", succeeded.sum());
+        out.sample("scotbank_upstream_sync_runs_total", "outcome=\"failed\"", failed.sum());
+        out.counter("scotbank_upstream_sync_accounts_total", "Accounts added by sync runs", accountsMerged.sum());
+        out.counter("scotbank_upstream_sync_transactions_total", "Transactions added by sync runs", transactionsMerged.sum());
+    }
+}
@@ -0,0 +1,61 @@
+package uk.co.asepstrath.bank;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Synthetic data behind the database benchmarks: a fresh in-memory H2 database per trial, filled through
+DatabaseController.setupDatabase from a seeded set of accounts and transactions so every run (and every
+machine) benchmarks the same rows.
+ */
+final class BenchmarkData {
+
+    static final Logger LOG = LoggerFactory.getLogger(BenchmarkData.class);
+
+    private static final String[] BUSINESSES = {"ALD", "AMA", "ARG", "BOO", "BOT", "BUR", "CAF", "CEX", "CLA", "COS"};
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private BenchmarkData() {
+    }
+
+    // Each call gets its own database, so one trial's transfers never show up in the next
+    static DataSource newDatabase() {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:bench" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        return h2;
+    }
+
+    // Fills App.accounts and App.transactions; roughly a third of transactions are payments to businesses
+    static void generate(int accountCount, int transactionCount) {
+        Random random = new Random(42);
+        App.accounts.clear();
+        App.transactions.clear();
+        for (int i = 0; i < accountCount; i++) {
+            App.accounts.add(Account.ofPence(new UUID(0, i), "Account " + i, 1_000_000 + random.nextInt(10_000_000), false, "EH1 1AA"));
+        }
+        for (int i = 0; i < transactionCount; i++) {
+            String from = i % 10 == 0 ? null : App.accounts.get(random.nextInt(accountCount)).getId();
+            String to = i % 3 == 0 ? BUSINESSES[random.nextInt(BUSINESSES.length)] : App.accounts.get(random.nextInt(accountCount)).getId();
+            String date = String.format("2023-%02d-%02d 12:00", 1 + random.nextInt(12), 1 + random.nextInt(28));
+            App.transactions.add(Transaction.ofPence(new UUID(1, i), 1 + random.nextInt(50_000), date, from, to, "PAYMENT"));
+        }
+    }
+
+    static DatabaseController loadedController(DataSource dataSource, DatabaseController.ReplayMode replayMode) {
+        DatabaseController controller = new DatabaseController(dataSource, LOG);
+        controller.setReplayMode(replayMode);
+        controller.setLeaderboard(new SpendingLeaderboard(SpendingLeaderboard.DEFAULT_SIZE, 0));
+        controller.setupDatabase();
+        return controller;
+    }
+
+    static UUID accountId(int index) {
+        return new UUID(0, index);
+    }
+}
@@ -0,0 +1,93 @@
+package uk.co.asepstrath.bank;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+The DatabaseController read and write paths, against an embedded H2 loaded with BenchmarkData.
+transferFunds writes a transaction row per call, so the table grows through a trial the way it does in
+production; every trial starts again from a freshly loaded database. The balance replay, which is the
+only path that depends on the replay mode, is in ReplayBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseControllerBenchmark {
+
+    @Param({"1000"})
+    public int accounts;
+
+    @Param({"20000"})
+    public int transactions;
+
+    private DataSource dataSource;
+    private DatabaseController controller;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void load() {
+        BenchmarkData.generate(accounts, transactions);
+        dataSource = BenchmarkData.newDatabase();
+        controller = BenchmarkData.loadedController(dataSource, DatabaseController.ReplayMode.MEMORY);
+    }
+
+    @TearDown(Level.Trial)
+    public void drop() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+        }
+        App.accounts.clear();
+        App.transactions.clear();
+    }
+
+    // Walks the accounts in turn so no single account's rows stay hot in the cache
+    private UUID nextAccount() {
+        next = (next + 1) % accounts;
+        return BenchmarkData.accountId(next);
+    }
+
+    @Benchmark
+    public List<Transaction> getTransactionsById() {
+        return controller.getTransactionsById(nextAccount());
+    }
+
+    @Benchmark
+    public List<CategoryAmount> getCategoryAndAmountSpent() {
+        return controller.getcategoryandamountspentfromId(nextAccount());
+    }
+
+    @Benchmark
+    public List<Account> getTopTenBiggestSpenders() {
+        return controller.getTopTenBiggestSpenders();
+    }
+
+    // A penny between neighbouring accounts; the seeded balances cover every transfer in a trial
+    @Benchmark
+    public DatabaseController.TransferResult transferFunds() {
+        UUID from = nextAccount();
+        return controller.transferFunds(from, BenchmarkData.accountId((next + 1) % accounts), 1);
+    }
+}
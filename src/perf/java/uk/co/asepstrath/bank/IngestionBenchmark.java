@@ -0,0 +1,82 @@
+package uk.co.asepstrath.bank;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/*
+A complete startup load (tables, accounts, businesses, transactions, balance replay, spending totals and
+the leaderboard) into an empty database, i.e. everything App.onStart does after the upstream fetch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IngestionBenchmark {
+
+    @Param({"1000"})
+    public int accounts;
+
+    @Param({"20000"})
+    public int transactions;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    @Param({"MEMORY", "SQL"})
+    public DatabaseController.ReplayMode replayMode;
+
+    private DataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        BenchmarkData.generate(accounts, transactions);
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyDatabase() {
+        dataSource = BenchmarkData.newDatabase();
+    }
+
+    @TearDown(Level.Iteration)
+    public void drop() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void clear() {
+        App.accounts.clear();
+        App.transactions.clear();
+    }
+
+    @Benchmark
+    public DatabaseController setupDatabase() {
+        DatabaseController controller = new DatabaseController(dataSource, BenchmarkData.LOG);
+        controller.setBatchSize(batchSize);
+        controller.setReplayMode(replayMode);
+        controller.setLeaderboard(new SpendingLeaderboard(SpendingLeaderboard.DEFAULT_SIZE, 0));
+        controller.setupDatabase();
+        return controller;
+    }
+}
@@ -0,0 +1,353 @@
+package uk.co.asepstrath.bank;
+
+import io.jooby.Server;
+import io.jooby.ServerOptions;
+import io.jooby.netty.NettyServer;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+End-to-end load test for the /scotbank routes: boots App on Netty with the upstream fetch turned off and
+BenchmarkData loaded instead, adds synthetic users straight into the database, then has many clients
+(one virtual thread each, every client with its own session) log in and drive a weighted mix of
+dashboard, spending, transfer and admin requests. Every response is read in full, so the numbers include
+the database work, Handlebars rendering and session handling.
+Latencies go into one HdrHistogram per route; the report is printed at the end and each route's full
+percentile distribution is written to <out>/<route>.hgrm.
+
+Run with: mvn -Pperf test-compile exec:exec@loadtest -Dloadtest.args="clients=500 duration=120"
+Arguments are key=value. Keys containing a dot (e.g. security.bcryptCost=4, database.replayMode=sql)
+are passed through to the application config.
+ */
+public class LoadTest {
+
+    private static final String PASSWORD = "load-test-password";
+    private static final String ADMIN_EMAIL = "admin@load.scotbank";
+    private static final long HIGHEST_MICROS = TimeUnit.SECONDS.toMicros(60);
+
+    enum Traffic { DASHBOARD, SPENDING, TRANSFER, ADMIN }
+
+    enum Route {
+        LOGIN("POST", "/login"),
+        DASHBOARD("GET", "/dashboard"),
+        SPENDING("GET", "/spending"),
+        TRANSFER("POST", "/transfer"),
+        ADMIN_TEN("GET", "/adminTen"),
+        ADMIN_TRANSACTIONS("GET", "/adminTransactions"),
+        ADMIN_ACCOUNTS("GET", "/adminAccounts"),
+        ADMIN_SANCTIONED("GET", "/adminSanctioned");
+
+        private static final Route[] ADMIN = {ADMIN_TEN, ADMIN_TRANSACTIONS, ADMIN_ACCOUNTS, ADMIN_SANCTIONED};
+
+        private final String path;
+        private final String label;
+
+        Route(String method, String path) {
+            this.path = path;
+            this.label = method + " " + path;
+        }
+    }
+
+    private static final class RouteStats {
+        private final ConcurrentHistogram micros = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+        private final LongAdder errors = new LongAdder();
+    }
+
+    private final Map<String, String> settings;
+    private final int accounts;
+    private final int users;
+    private final int clients;
+    private final Duration warmup;
+    private final Duration duration;
+    private final Map<Traffic, Integer> mix = new EnumMap<>(Traffic.class);
+    private final String baseUri;
+    private final Map<Route, RouteStats> stats = new EnumMap<>(Route.class);
+    private final HttpClient http;
+
+    // Logins are always recorded; everything else only once the warmup is over
+    private volatile boolean measuring;
+
+    LoadTest(Map<String, String> settings) {
+        this.settings = settings;
+        this.accounts = intSetting("accounts", 1000);
+        this.users = Math.min(accounts, intSetting("users", 500));
+        this.clients = intSetting("clients", 200);
+        this.warmup = Duration.ofSeconds(intSetting("warmup", 10));
+        this.duration = Duration.ofSeconds(intSetting("duration", 60));
+        this.baseUri = "http://localhost:" + intSetting("port", 8088) + "/scotbank";
+        for (String weight : settings.getOrDefault("mix", "dashboard=50,spending=20,transfer=20,admin=10").split(",")) {
+            String[] pair = weight.split("=");
+            mix.put(Traffic.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+        }
+        for (Route route : Route.values()) {
+            stats.put(route, new RouteStats());
+        }
+        this.http = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(10))
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                settings.put(arg.substring(0, equals), arg.substring(equals + 1));
+            }
+        }
+        new LoadTest(settings).run();
+    }
+
+    void run() throws Exception {
+        // App reads system properties over application.conf
+        System.setProperty("upstream.enabled", "false");
+        System.setProperty("businesses.reloadSeconds", "0");
+        settings.forEach((key, value) -> {
+            if (key.contains(".")) {
+                System.setProperty(key, value);
+            }
+        });
+
+        BenchmarkData.generate(accounts, intSetting("transactions", 50_000));
+        App app = new App();
+        Server server = new NettyServer();
+        server.setOptions(new ServerOptions().setPort(intSetting("port", 8088)));
+        server.start(app);
+
+        try {
+            awaitReady();
+            addUsers(app.require(DataSource.class), app.getConfig().getInt("security.bcryptCost"));
+            drive();
+            report(System.out);
+            writeHistograms(Path.of(settings.getOrDefault("out", "target/loadtest")));
+        } finally {
+            server.stop();
+            http.close();
+        }
+    }
+
+    // The load runs in the background once the server is up, so wait for /health/ready before logging anyone in
+    private void awaitReady() throws IOException, InterruptedException {
+        URI ready = URI.create("http://localhost:" + intSetting("port", 8088) + "/health/ready");
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(10);
+        while (http.send(HttpRequest.newBuilder(ready).build(), HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("App was not ready after 10 minutes");
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    // Every user shares one password hash, so adding thousands of users doesn't take thousands of bcrypt rounds
+    private void addUsers(DataSource dataSource, int bcryptCost) throws SQLException {
+        PasswordHasher hasher = new PasswordHasher(1, 1, bcryptCost, BenchmarkData.LOG);
+        String hash = hasher.hash(PASSWORD);
+        hasher.shutdown();
+
+        String query = "INSERT INTO Users (id, Email, Name, Password, Role, Account) VALUES (?, ?, ?, ?, ?, ?)";
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            for (int i = 0; i <= users; i++) {
+                boolean admin = i == users;
+                preparedStatement.setObject(1, UUID.randomUUID());
+                preparedStatement.setString(2, admin ? ADMIN_EMAIL : userEmail(i));
+                preparedStatement.setString(3, admin ? "Load Admin" : "Account " + i);
+                preparedStatement.setString(4, hash);
+                preparedStatement.setString(5, admin ? "admin" : "user");
+                preparedStatement.setObject(6, admin ? null : BenchmarkData.accountId(i));
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+        }
+        System.out.printf("Added %d users and an admin (bcrypt cost %d)%n", users, bcryptCost);
+    }
+
+    private void drive() throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        System.out.printf("%d clients, %s warmup, %s measured, mix %s%n", clients, warmup, duration, mix);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                int client = i;
+                executor.submit(() -> {
+                    client(client, end);
+                    return null;
+                });
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(0, measureFrom - System.nanoTime()));
+            measuring = true;
+        }
+    }
+
+    private void client(int client, long end) throws IOException, InterruptedException {
+        Random random = new Random(client);
+        String userSession = login(userEmail(client % users));
+        String adminSession = null;
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+
+        while (System.nanoTime() < end) {
+            switch (pick(random, totalWeight)) {
+                case DASHBOARD -> get(Route.DASHBOARD, userSession);
+                case SPENDING -> get(Route.SPENDING, userSession);
+                case TRANSFER -> {
+                    UUID payee = BenchmarkData.accountId(random.nextInt(accounts));
+                    send(Route.TRANSFER, request(Route.TRANSFER, userSession)
+                            .header("Content-Type", "application/x-www-form-urlencoded")
+                            .POST(HttpRequest.BodyPublishers.ofString("to=" + payee + "&amount=0.01")).build());
+                }
+                case ADMIN -> {
+                    if (adminSession == null) {
+                        adminSession = login(ADMIN_EMAIL);
+                    }
+                    get(Route.ADMIN[random.nextInt(Route.ADMIN.length)], adminSession);
+                }
+            }
+        }
+    }
+
+    private Traffic pick(Random random, int totalWeight) {
+        int roll = random.nextInt(totalWeight);
+        for (Map.Entry<Traffic, Integer> weight : mix.entrySet()) {
+            roll -= weight.getValue();
+            if (roll < 0) {
+                return weight.getKey();
+            }
+        }
+        return Traffic.DASHBOARD;
+    }
+
+    // Returns the session cookie; sign-ins turned away while the hasher pool is full are retried
+    private String login(String email) throws IOException, InterruptedException {
+        String form = "email=" + URLEncoder.encode(email, StandardCharsets.UTF_8) + "&password=" + PASSWORD;
+        while (true) {
+            HttpResponse<byte[]> response = send(Route.LOGIN, HttpRequest.newBuilder(URI.create(baseUri + Route.LOGIN.path))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString(form)).build());
+            if (response != null && response.headers().firstValue("Location").orElse("").endsWith("/dashboard")) {
+                List<String> cookies = response.headers().allValues("Set-Cookie");
+                StringBuilder cookie = new StringBuilder();
+                for (String setCookie : cookies) {
+                    int attributes = setCookie.indexOf(';');
+                    cookie.append(cookie.isEmpty() ? "" : "; ").append(attributes < 0 ? setCookie : setCookie.substring(0, attributes));
+                }
+                return cookie.toString();
+            }
+            if (response != null && response.statusCode() != 503) {
+                throw new IllegalStateException("Could not sign in as " + email + ", status " + response.statusCode());
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private void get(Route route, String session) {
+        send(route, request(route, session).GET().build());
+    }
+
+    private HttpRequest.Builder request(Route route, String session) {
+        return HttpRequest.newBuilder(URI.create(baseUri + route.path)).header("Cookie", session);
+    }
+
+    private HttpResponse<byte[]> send(Route route, HttpRequest request) {
+        RouteStats routeStats = stats.get(route);
+        long start = System.nanoTime();
+        HttpResponse<byte[]> response = null;
+        try {
+            response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            // counted as an error below
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long micros = (System.nanoTime() - start) / 1000;
+
+        if (measuring || route == Route.LOGIN) {
+            routeStats.micros.recordValue(Math.min(micros, HIGHEST_MICROS));
+            if (response == null || response.statusCode() >= 400) {
+                routeStats.errors.increment();
+            }
+        }
+        return response;
+    }
+
+    void report(PrintStream out) {
+        double seconds = duration.toMillis() / 1000.0;
+        out.printf("%n%-24s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "route", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        Histogram all = new Histogram(HIGHEST_MICROS, 3);
+        long errors = 0;
+        for (Route route : Route.values()) {
+            RouteStats routeStats = stats.get(route);
+            if (routeStats.micros.getTotalCount() == 0) {
+                continue;
+            }
+            printRow(out, route.label, routeStats.micros, routeStats.errors.sum(), seconds);
+            if (route != Route.LOGIN) {
+                all.add(routeStats.micros);
+                errors += routeStats.errors.sum();
+            }
+        }
+        printRow(out, "all (excluding login)", all, errors, seconds);
+    }
+
+    private static void printRow(PrintStream out, String label, Histogram micros, long errors, double seconds) {
+        out.printf("%-24s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", label, micros.getTotalCount(), errors,
+                micros.getTotalCount() / seconds, millis(micros, 50), millis(micros, 90), millis(micros, 99),
+                millis(micros, 99.9), micros.getMaxValue() / 1000.0);
+    }
+
+    private static double millis(Histogram micros, double percentile) {
+        return micros.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private void writeHistograms(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for (Route route : Route.values()) {
+            Histogram micros = stats.get(route).micros;
+            if (micros.getTotalCount() > 0) {
+                try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(route.name().toLowerCase() + ".hgrm")))) {
+                    micros.outputPercentileDistribution(out, 1000.0); // in milliseconds
+                }
+            }
+        }
+        System.out.println("Percentile distributions written to " + directory.toAbsolutePath());
+    }
+
+    private static String userEmail(int index) {
+        return "user" + index + "@load.scotbank";
+    }
+
+    private int intSetting(String key, int defaultValue) {
+        return settings.containsKey(key) ? Integer.parseInt(settings.get(key)) : defaultValue;
+    }
+}
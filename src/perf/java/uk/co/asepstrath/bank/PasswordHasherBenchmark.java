@@ -0,0 +1,57 @@
+package uk.co.asepstrath.bank;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+DatabaseController.verifyPassword, i.e. one bcrypt check on the hasher pool, at the configured cost and
+either side of it. Each step of the cost doubles the time, which is what security.bcryptCost trades
+against login latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordHasherBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Param({"8", "10", "12"})
+    public int cost;
+
+    private PasswordHasher hasher;
+    private DatabaseController controller;
+    private String hash;
+
+    @Setup
+    public void hash() {
+        hasher = new PasswordHasher(1, PasswordHasher.DEFAULT_QUEUE_CAPACITY, cost, BenchmarkData.LOG);
+        controller = new DatabaseController(null, BenchmarkData.LOG);
+        controller.setPasswordHasher(hasher);
+        hash = controller.encryptPassword(PASSWORD);
+    }
+
+    @TearDown
+    public void shutdown() {
+        hasher.shutdown();
+    }
+
+    @Benchmark
+    public boolean verifyPassword() {
+        return controller.verifyPassword(PASSWORD, hash);
+    }
+}
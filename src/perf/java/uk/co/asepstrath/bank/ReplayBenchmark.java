@@ -0,0 +1,71 @@
+package uk.co.asepstrath.bank;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/*
+DatabaseController.applyTransactionsToAccounts in each replay mode, against the same BenchmarkData database
+as DatabaseControllerBenchmark. Kept apart so the replay mode only multiplies this benchmark, not the reads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ReplayBenchmark {
+
+    @Param({"1000"})
+    public int accounts;
+
+    @Param({"20000"})
+    public int transactions;
+
+    @Param({"MEMORY", "SQL"})
+    public DatabaseController.ReplayMode replayMode;
+
+    private DataSource dataSource;
+    private DatabaseController controller;
+
+    @Setup(Level.Trial)
+    public void load() {
+        BenchmarkData.generate(accounts, transactions);
+        dataSource = BenchmarkData.newDatabase();
+        controller = BenchmarkData.loadedController(dataSource, replayMode);
+    }
+
+    @TearDown(Level.Trial)
+    public void drop() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+        }
+        App.accounts.clear();
+        App.transactions.clear();
+    }
+
+    // Replays the whole transaction history onto the balances (they drift further each call, which doesn't change the work done)
+    @Benchmark
+    public void applyTransactionsToAccounts() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            controller.applyTransactionsToAccounts(connection);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package uk.co.asepstrath.bank;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+Parsing one recorded upstream transactions page with the streaming TransactionPageParser, next to the
+DOM parsing App used to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionPageParserBenchmark {
+
+    private byte[] page;
+    private TransactionPageParser parser;
+
+    @Setup
+    public void load() throws IOException {
+        page = DomTransactionPageParser.recordedPage();
+        parser = new TransactionPageParser(BenchmarkData.LOG);
+    }
+
+    @Benchmark
+    public List<Transaction> stax() throws Exception {
+        return parser.parse(new ByteArrayInputStream(page), 0);
+    }
+
+    @Benchmark
+    public List<Transaction> dom() throws Exception {
+        return DomTransactionPageParser.parse(page);
+    }
+}
@@ -0,0 +1,89 @@
+package uk.co.asepstrath.bank;
+
+import io.jooby.Context;
+import io.jooby.Route;
+import io.jooby.Session;
+import io.jooby.Value;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AuthFilterTest {
+
+    private Context ctx;
+    private Session session;
+    private Route.Handler next;
+    private Route.Handler filtered;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ctx = mock(Context.class);
+        session = mock(Session.class);
+        next = mock(Route.Handler.class);
+        when(next.apply(ctx)).thenReturn("next");
+        filtered = new AuthFilter().apply(next);
+    }
+
+    @Test
+    void testPublicPathSkipsCheck() throws Exception {
+        when(ctx.getRequestPath()).thenReturn("/scotbank/login");
+
+        assertEquals("next", filtered.apply(ctx));
+        verify(ctx, never()).sessionOrNull();
+    }
+
+    @Test
+    void testMissingSessionRedirectsToLogin() throws Exception {
+        when(ctx.getRequestPath()).thenReturn("/scotbank/dashboard");
+        when(ctx.sessionOrNull()).thenReturn(null);
+
+        filtered.apply(ctx);
+
+        verify(ctx).sendRedirect("/scotbank/login");
+        verify(next, never()).apply(any());
+    }
+
+    @Test
+    void testUserCannotOpenAdminPages() throws Exception {
+        when(ctx.getRequestPath()).thenReturn("/scotbank/adminAccounts");
+        when(ctx.sessionOrNull()).thenReturn(session);
+        signIn("user", UUID.randomUUID());
+
+        filtered.apply(ctx);
+
+        verify(session).destroy();
+        verify(ctx).sendRedirect("/scotbank/login");
+        verify(next, never()).apply(any());
+    }
+
+    @Test
+    void testSignedInUserReachesHandler() throws Exception {
+        UUID account = UUID.randomUUID();
+        when(ctx.getRequestPath()).thenReturn("/scotbank/dashboard");
+        when(ctx.sessionOrNull()).thenReturn(session);
+        signIn("user", account);
+
+        assertEquals("next", filtered.apply(ctx));
+        verify(ctx).setAttribute(eq(Principal.ATTRIBUTE), argThat(principal ->
+                account.equals(((Principal) principal).getAccountId()) && "Test User".equals(((Principal) principal).getName())));
+    }
+
+    private void signIn(String role, UUID account) {
+        stubSession("email", "test@scotbank.com");
+        stubSession("role", role);
+        stubSession("name", "Test User");
+        stubSession("accountId", account.toString());
+    }
+
+    private void stubSession(String name, String value) {
+        Value sessionValue = mock(Value.class);
+        when(sessionValue.valueOrNull()).thenReturn(value);
+        when(session.get(name)).thenReturn(sessionValue);
+    }
+}
@@ -0,0 +1,65 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class BusinessRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testClasspathLookups() {
+        BusinessRegistry registry = BusinessRegistry.classpath();
+
+        assertEquals("Aldi", registry.getName("ALD"));
+        assertEquals("Groceries", registry.getCategory("ALD"));
+        assertFalse(registry.isSanctioned("ALD"));
+        assertEquals(3, registry.getSanctionedIds().size());
+        assertNull(registry.getName("ZZZ"));
+        assertFalse(registry.isSanctioned(null));
+    }
+
+    @Test
+    void testReloadWhenFileChanges() throws IOException {
+        Path csv = tempDir.resolve("businesses.csv");
+        Files.writeString(csv, "ALD,Aldi,Groceries,false\n");
+        BusinessRegistry registry = new BusinessRegistry(csv, mock(Logger.class));
+        AtomicInteger reloads = new AtomicInteger();
+        registry.addReloadListener(reloads::incrementAndGet);
+
+        assertFalse(registry.reloadIfChanged());
+
+        Files.writeString(csv, "ALD,Aldi,Groceries,true\nLID,Lidl,Groceries,false\n");
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(Files.getLastModifiedTime(csv).toMillis() + 1000));
+
+        assertTrue(registry.reloadIfChanged());
+        assertEquals(1, reloads.get());
+        assertTrue(registry.isSanctioned("ALD"));
+        assertEquals("Lidl", registry.getName("LID"));
+        assertEquals(2, registry.getAll().size());
+    }
+
+    @Test
+    void testMalformedReloadKeepsPreviousList() throws IOException {
+        Path csv = tempDir.resolve("businesses.csv");
+        Files.writeString(csv, "ALD,Aldi,Groceries,false\n");
+        BusinessRegistry registry = new BusinessRegistry(csv, mock(Logger.class));
+
+        Files.writeString(csv, "not a business\n");
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(Files.getLastModifiedTime(csv).toMillis() + 1000));
+
+        assertFalse(registry.reloadIfChanged());
+        assertEquals("Aldi", registry.getName("ALD"));
+    }
+}
@@ -1,14 +1,33 @@
 package uk.co.asepstrath.bank;
 
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import static org.junit.jupiter.api.Assertions.*;
 import org.slf4j.Logger;
 import static org.mockito.Mockito.*;
@@ -24,6 +43,9 @@ public class  DatabaseControllerTest {
     private DatabaseController databaseController;
     private Logger log;
 
+    @TempDir
+    Path tempDir;
+
     @BeforeEach
     public void setUp() throws SQLException {
         dataSource = mock(DataSource.class);
@@ -52,13 +74,23 @@ public class  DatabaseControllerTest {
         when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
         when(preparedStatement.executeQuery()).thenReturn(resultSet);
         when(resultSet.next()).thenReturn(true);
-        when(resultSet.getDouble("Balance")).thenReturn(1000.0);
+        when(resultSet.getLong("Balance")).thenReturn(100_000L); // stored in pence
 
         String balance = databaseController.getBalanceFromName(accountName);
 
         assertEquals("1000.0", balance);
     }
 
+    @Test
+    public void testGetBalanceFromIdIsExactPence() throws SQLException {
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getLong("Balance")).thenReturn(12_345_678_901_234_567L); // more digits than a double holds
+
+        assertEquals("123456789012345.67", databaseController.getBalanceFromID(UUID.randomUUID()));
+    }
+
     @Test
     public void testGetIdFromName() throws SQLException {
         String accountName = "Test Account";
@@ -89,4 +121,455 @@ public class  DatabaseControllerTest {
         assertTrue(databaseController.verifyPassword(password, encryptedPassword));
         assertFalse(databaseController.verifyPassword("wrongpassword", encryptedPassword));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testApplyTransactionsMatchesNestedLoopReplay() {
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("replayMemory"), log);
+        loadSyntheticData();
+        h2Controller.setupDatabase();
+
+        Map<String, Double> expected = legacyReplay(h2Controller.getAllTransactions());
+        for (Account account : h2Controller.getAllAccounts()) {
+            assertEquals(expected.get(account.getId()), account.getBalance().doubleValue(), "Balance for " + account.getId());
+        }
+    }
+
+    @Test
+    public void testSqlReplayMatchesNestedLoopReplay() {
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("replaySql"), log);
+        h2Controller.setReplayMode(DatabaseController.ReplayMode.SQL);
+        loadSyntheticData();
+        h2Controller.setupDatabase();
+
+        Map<String, Double> expected = legacyReplay(h2Controller.getAllTransactions());
+        for (Account account : h2Controller.getAllAccounts()) {
+            // Balances are summed in whole pence, so the order H2 adds them in makes no difference
+            assertEquals(expected.get(account.getId()), account.getBalance().doubleValue(), "Balance for " + account.getId());
+        }
+    }
+
+    @Test
+    public void testGetCounterpartyNames() {
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("counterparties"), log);
+        loadSyntheticData();
+        h2Controller.setupDatabase();
+        UUID owner = UUID.fromString(App.accounts.get(0).getId());
+        UUID payee = UUID.fromString(App.accounts.get(1).getId());
+        h2Controller.createUser("owner@scotbank.com", "Owner", "test", "user", owner);
+        h2Controller.createUser("payee@scotbank.com", "Payee", "test", "user", payee);
+
+        List<Transaction> transactions = List.of(
+                new Transaction(UUID.randomUUID(), 10.0, "2023-01-01 00:00", owner.toString(), payee.toString(), "TRANSFER"),
+                new Transaction(UUID.randomUUID(), 5.0, "2023-01-01 00:00", owner.toString(), "ALD", "PAYMENT"),
+                new Transaction(UUID.randomUUID(), 5.0, "2023-01-01 00:00", null, owner.toString(), "DEPOSIT"));
+
+        Map<String, String> names = h2Controller.getCounterpartyNames(owner, transactions);
+
+        assertEquals("Owner", names.get(owner.toString()));
+        assertEquals("Payee", names.get(payee.toString()));
+        assertEquals("Aldi", names.get("ALD"));
+        assertEquals(3, names.size());
+    }
+
+    @Test
+    public void testConcurrentTransfersNeverOverdraw() throws Exception {
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("concurrentTransfers"), log);
+        TransferMetrics metrics = new TransferMetrics();
+        h2Controller.setTransferMetrics(metrics);
+        UUID payer = new UUID(0, 1);
+        UUID payee = new UUID(0, 2);
+        App.accounts.add(new Account(payer, "Payer", 100.0, false, "EH1 1AA"));
+        App.accounts.add(new Account(payee, "Payee", 0.0, false, "EH1 1AA"));
+        h2Controller.setupDatabase();
+
+        // 20 transfers of £10 race for £100
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<DatabaseController.TransferResult>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(executor.submit(() -> h2Controller.transferFunds(payer, payee, 1000)));
+        }
+        int completed = 0;
+        for (Future<DatabaseController.TransferResult> result : results) {
+            DatabaseController.TransferResult outcome = result.get();
+            assertNotEquals(DatabaseController.TransferResult.FAILED, outcome);
+            if (outcome == DatabaseController.TransferResult.COMPLETED) {
+                completed++;
+            }
+        }
+        executor.shutdown();
+
+        // Money is only ever moved, never created, and the payer can't go below zero
+        assertEquals(completed, metrics.getCompleted());
+        assertTrue(completed <= 10);
+        assertEquals(Money.toBigDecimal(10_000 - completed * 1000L).toPlainString(), h2Controller.getBalanceFromID(payer));
+        assertEquals(Money.toBigDecimal(completed * 1000L).toPlainString(), h2Controller.getBalanceFromID(payee));
+        // Only a transfer that ran out of retries can leave money behind
+        assertTrue(completed == 10 || metrics.getConflicted() > 0);
+    }
+
+    @Test
+    public void testTransferRejectsInsufficientFundsAndUnknownPayee() {
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("transferChecks"), log);
+        UUID payer = new UUID(0, 1);
+        App.accounts.add(new Account(payer, "Payer", 5.0, false, "EH1 1AA"));
+        h2Controller.setupDatabase();
+
+        assertEquals(DatabaseController.TransferResult.INSUFFICIENT_FUNDS, h2Controller.transferFunds(payer, new UUID(0, 2), 501));
+        assertEquals(DatabaseController.TransferResult.ACCOUNT_NOT_FOUND, h2Controller.transferFunds(payer, new UUID(0, 2), 100));
+        assertEquals(DatabaseController.TransferResult.ACCOUNT_NOT_FOUND, h2Controller.transferFunds(new UUID(0, 3), payer, 100));
+        assertEquals("5.00", h2Controller.getBalanceFromID(payer));
+    }
+
+    @Test
+    public void testBulkTransferAppliesItemsInOrder() {
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("bulkTransfer"), log);
+        h2Controller.setBatchSize(2); // force several database transactions
+        UUID payer = new UUID(0, 1);
+        UUID payee = new UUID(0, 2);
+        App.accounts.add(new Account(payer, "Payer", 10.0, false, "EH1 1AA"));
+        App.accounts.add(new Account(payee, "Payee", 0.0, false, "EH1 1AA"));
+        h2Controller.setupDatabase();
+
+        List<DatabaseController.TransferResult> results = h2Controller.bulkTransfer(List.of(
+                new TransferInstruction(payer, payee, 600),
+                new TransferInstruction(payer, payee, 600),      // only £4 left
+                new TransferInstruction(payee, payer, 100),      // funded by the first transfer
+                new TransferInstruction(payer, new UUID(0, 9), 100),
+                new TransferInstruction(payer, payer, 100)));
+
+        assertEquals(List.of(DatabaseController.TransferResult.COMPLETED,
+                DatabaseController.TransferResult.INSUFFICIENT_FUNDS,
+                DatabaseController.TransferResult.COMPLETED,
+                DatabaseController.TransferResult.ACCOUNT_NOT_FOUND,
+                DatabaseController.TransferResult.INVALID), results);
+        assertEquals("5.00", h2Controller.getBalanceFromID(payer));
+        assertEquals("5.00", h2Controller.getBalanceFromID(payee));
+        assertEquals(2, h2Controller.getTransactionsById(payer).size());
+    }
+
+    @Test
+    public void testCategorySpendMatchesTransactions() {
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("categorySpend"), log);
+        loadSyntheticData();
+        h2Controller.setupDatabase();
+        UUID account = new UUID(0, 7);
+
+        Map<String, Long> expected = new TreeMap<>();
+        for (Transaction transaction : App.transactions) {
+            String category = BusinessRegistry.classpath().getCategory(transaction.getTo());
+            if (account.toString().equals(transaction.getFrom()) && category != null) {
+                expected.merge(category, transaction.getAmountPence(), Long::sum);
+            }
+        }
+
+        assertEquals(expected, categoryTotals(h2Controller.getcategoryandamountspentfromId(account)));
+        assertTrue(h2Controller.rebuildCategorySpend() > 0);
+        assertEquals(expected, categoryTotals(h2Controller.getcategoryandamountspentfromId(account)));
+    }
+
+    @Test
+    public void testNewBusinessPaymentsAddToCategorySpend() {
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("incrementalCategorySpend"), log);
+        loadSyntheticData();
+        h2Controller.setupDatabase();
+        UUID account = new UUID(0, 7);
+        String groceries = BusinessRegistry.classpath().getCategory("ALD");
+        Map<String, Long> expected = new TreeMap<>(categoryTotals(h2Controller.getcategoryandamountspentfromId(account)));
+        expected.merge(groceries, 1234L, Long::sum);
+
+        // Two payments to the same business and a transfer, which has no category
+        h2Controller.mergeUpstream(List.of(), List.of(
+                Transaction.ofPence(UUID.randomUUID(), 1000, "2024-01-02 09:00", account.toString(), "ALD", "PAYMENT"),
+                Transaction.ofPence(UUID.randomUUID(), 234, "2024-01-02 10:00", account.toString(), "ALD", "PAYMENT"),
+                Transaction.ofPence(UUID.randomUUID(), 500, "2024-01-02 11:00", account.toString(), new UUID(0, 8).toString(), "TRANSFER")));
+
+        assertEquals(expected, categoryTotals(h2Controller.getcategoryandamountspentfromId(account)));
+        // and the running totals agree with recomputing them from the transactions
+        assertTrue(h2Controller.rebuildCategorySpend() > 0);
+        assertEquals(expected, categoryTotals(h2Controller.getcategoryandamountspentfromId(account)));
+    }
+
+    @Test
+    public void testMergeUpstreamAppliesOnlyNewRecords() {
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("mergeUpstream"), log);
+        UUID payer = new UUID(0, 1);
+        UUID payee = new UUID(0, 2);
+        UUID joiner = new UUID(0, 3);
+        Account payerAccount = new Account(payer, "Payer", 10.0, false, "EH1 1AA");
+        App.accounts.add(payerAccount);
+        App.accounts.add(new Account(payee, "Payee", 0.0, false, "EH1 1AA"));
+        Transaction loaded = Transaction.ofPence(UUID.randomUUID(), 100, "2024-01-01 09:00", payer.toString(), payee.toString(), "TRANSFER");
+        App.transactions.add(loaded);
+        h2Controller.setupDatabase();
+
+        List<Account> upstreamAccounts = List.of(payerAccount, new Account(joiner, "Joiner", 5.0, false, "G1 1XQ"));
+        List<Transaction> upstreamTransactions = List.of(loaded,
+                Transaction.ofPence(UUID.randomUUID(), 200, "2024-01-02 09:00", payer.toString(), joiner.toString(), "TRANSFER"),
+                Transaction.ofPence(UUID.randomUUID(), 50, "2024-01-02 10:00", joiner.toString(), "ALD", "PAYMENT"));
+        DatabaseController.MergeResult result = h2Controller.mergeUpstream(upstreamAccounts, upstreamTransactions);
+
+        assertEquals(1, result.getNewAccounts());
+        assertEquals(2, result.getNewTransactions());
+        assertEquals("7.00", h2Controller.getBalanceFromID(payer));
+        assertEquals("1.00", h2Controller.getBalanceFromID(payee));
+        assertEquals("6.50", h2Controller.getBalanceFromID(joiner));
+        assertEquals(Map.of(BusinessRegistry.classpath().getCategory("ALD"), 50L),
+                categoryTotals(h2Controller.getcategoryandamountspentfromId(joiner)));
+
+        // Fetching the same records again changes nothing
+        result = h2Controller.mergeUpstream(upstreamAccounts, upstreamTransactions);
+        assertEquals(0, result.getNewAccounts());
+        assertEquals(0, result.getNewTransactions());
+        assertEquals("7.00", h2Controller.getBalanceFromID(payer));
+        assertEquals("6.50", h2Controller.getBalanceFromID(joiner));
+        assertEquals(3, h2Controller.getAllTransactions().size());
+    }
+
+    @Test
+    public void testMergeUpstreamRunsAlongsideBulkTransfers() throws Exception {
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("syncDuringTransfers"), log);
+        h2Controller.setBatchSize(10);
+        // Half the ids have the top bit set, where signed and unsigned UUID order disagree
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            UUID id = new UUID(i % 2 == 0 ? i : Long.MIN_VALUE + i, i);
+            ids.add(id);
+            App.accounts.add(new Account(id, "Account " + i, 1000.0, false, "EH1 1AA"));
+        }
+        h2Controller.setupDatabase();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<List<DatabaseController.TransferResult>>> transfers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            transfers.add(executor.submit(() -> {
+                List<DatabaseController.TransferResult> results = new ArrayList<>();
+                for (int round = 0; round < 20; round++) {
+                    List<TransferInstruction> instructions = new ArrayList<>();
+                    for (int i = 0; i < 30; i++) {
+                        instructions.add(new TransferInstruction(ids.get(random.nextInt(20)), ids.get(random.nextInt(20)), 100));
+                    }
+                    results.addAll(h2Controller.bulkTransfer(instructions));
+                }
+                return results;
+            }));
+        }
+
+        // Meanwhile the sync keeps bringing in transfers that touch the same accounts in every order
+        Random random = new Random(99);
+        for (int round = 0; round < 20; round++) {
+            List<Transaction> upstream = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                upstream.add(Transaction.ofPence(UUID.randomUUID(), 50, "2024-01-02 09:00",
+                        ids.get(random.nextInt(20)).toString(), ids.get(random.nextInt(20)).toString(), "TRANSFER"));
+            }
+            DatabaseController.MergeResult result = h2Controller.mergeUpstream(List.of(), upstream);
+            assertNotNull(result, "Sync rolled back");
+            assertEquals(30, result.getNewTransactions());
+        }
+        for (Future<List<DatabaseController.TransferResult>> transfer : transfers) {
+            assertFalse(transfer.get().contains(DatabaseController.TransferResult.FAILED));
+        }
+        executor.shutdown();
+
+        // Money only moved between the accounts
+        try (Connection h2 = h2DataSource("syncDuringTransfers").getConnection();
+             PreparedStatement total = h2.prepareStatement("SELECT SUM(Balance) FROM Accounts");
+             ResultSet rs = total.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals(20 * 100_000L, rs.getLong(1));
+        }
+    }
+
+    @Test
+    public void testSanctionsAreFlaggedOnIngestAndRescreened() throws IOException {
+        Path csv = tempDir.resolve("businesses.csv");
+        Files.writeString(csv, "ALD,Aldi,Groceries,false\nAMA,Amazon,Shopping,true\n");
+        BusinessRegistry registry = new BusinessRegistry(csv, log);
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("sanctions"), log, registry);
+        registry.addReloadListener(h2Controller::reloadBusinesses);
+        loadSyntheticData();
+        h2Controller.setupDatabase();
+
+        assertEquals(countPayments("AMA"), h2Controller.getSanctionedTransactions().size());
+
+        // ALD is added to the sanctions list and AMA comes off it
+        Files.writeString(csv, "ALD,Aldi,Groceries,true\nAMA,Amazon,Shopping,false\n");
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(Files.getLastModifiedTime(csv).toMillis() + 1000));
+        assertTrue(registry.reloadIfChanged());
+
+        List<Transaction> sanctioned = h2Controller.getSanctionedTransactions();
+        assertEquals(countPayments("ALD"), sanctioned.size());
+        for (Transaction transaction : sanctioned) {
+            assertEquals("ALD", transaction.getTo());
+        }
+    }
+
+    @Test
+    public void testCsvReadLoadsTheConfiguredBusinessesFile() throws Exception {
+        Path csv = tempDir.resolve("businesses.csv");
+        Files.writeString(csv, "ZZA,Zed's Apples,Groceries,false\nZZB,Zed's Books,Entertainment,true\n");
+        BusinessRegistry registry = new BusinessRegistry(csv, log);
+        DataSource h2 = h2DataSource("csvReadBusinesses");
+        DatabaseController h2Controller = new DatabaseController(h2, log, registry);
+        h2Controller.setCsvReadBusinesses(true);
+        h2Controller.setupDatabase();
+
+        Map<String, String> loaded = new TreeMap<>();
+        try (Connection connection = h2.getConnection();
+             PreparedStatement query = connection.prepareStatement("SELECT id, Name, Sanctioned FROM Businesses");
+             ResultSet rs = query.executeQuery()) {
+            while (rs.next()) {
+                loaded.put(rs.getString("id"), rs.getString("Name") + (rs.getBoolean("Sanctioned") ? " (sanctioned)" : ""));
+            }
+        }
+        assertEquals(Map.of("ZZA", "Zed's Apples", "ZZB", "Zed's Books (sanctioned)"), loaded);
+    }
+
+    @Test
+    public void testFailedBusinessesReloadKeepsTheOldList() throws Exception {
+        Path csv = tempDir.resolve("businesses.csv");
+        Files.writeString(csv, "ALD,Aldi,Groceries,false\nAMA,Amazon,Shopping,true\n");
+        BusinessRegistry registry = new BusinessRegistry(csv, log);
+        DataSource h2 = h2DataSource("failedBusinessesReload");
+        DatabaseController h2Controller = new DatabaseController(h2, log, registry);
+        registry.addReloadListener(h2Controller::reloadBusinesses);
+        loadSyntheticData();
+        h2Controller.setupDatabase();
+        UUID account = new UUID(0, 7);
+        Map<String, Long> spending = categoryTotals(h2Controller.getcategoryandamountspentfromId(account));
+        int sanctioned = h2Controller.getSanctionedTransactions().size();
+
+        // Break the sanctions re-screen, the last step of the reload
+        try (Connection connection = h2.getConnection();
+             PreparedStatement alter = connection.prepareStatement("ALTER TABLE Transactions ALTER COLUMN Sanctioned RENAME TO Flagged")) {
+            alter.execute();
+        }
+        Files.writeString(csv, "ALD,Aldi,Shopping,true\n");
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(Files.getLastModifiedTime(csv).toMillis() + 1000));
+        assertTrue(registry.reloadIfChanged());
+        verify(log).error(eq("Error reloading businesses"), any(SQLException.class));
+
+        Map<String, String> categories = new TreeMap<>();
+        try (Connection connection = h2.getConnection();
+             PreparedStatement query = connection.prepareStatement("SELECT id, Category FROM Businesses");
+             ResultSet rs = query.executeQuery()) {
+            while (rs.next()) {
+                categories.put(rs.getString("id"), rs.getString("Category"));
+            }
+        }
+        assertEquals(Map.of("ALD", "Groceries", "AMA", "Shopping"), categories);
+        assertEquals(spending, categoryTotals(h2Controller.getcategoryandamountspentfromId(account)));
+
+        try (Connection connection = h2.getConnection();
+             PreparedStatement alter = connection.prepareStatement("ALTER TABLE Transactions ALTER COLUMN Flagged RENAME TO Sanctioned")) {
+            alter.execute();
+        }
+        assertEquals(sanctioned, h2Controller.getSanctionedTransactions().size());
+    }
+
+    @Test
+    public void testTransactionsPagesCoverEveryRowInOrder() {
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("transactionPages"), log);
+        loadSyntheticData();
+        h2Controller.setupDatabase();
+
+        Set<UUID> seen = new HashSet<>();
+        double previous = Double.MAX_VALUE;
+        String cursor = null;
+        do {
+            Page<Transaction> page = h2Controller.getTransactionsPage("amount", true, cursor, 75);
+            for (Transaction transaction : page.getItems()) {
+                assertTrue(transaction.getAmount() <= previous, "Amounts should be descending");
+                assertTrue(seen.add(transaction.getTransactionId()), "Transaction seen twice");
+                previous = transaction.getAmount();
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(App.transactions.size(), seen.size());
+    }
+
+    @Test
+    public void testAccountsPagesCoverEveryRow() {
+        DatabaseController h2Controller = new DatabaseController(h2DataSource("accountPages"), log);
+        loadSyntheticData();
+        h2Controller.setupDatabase();
+
+        Page<Account> first = h2Controller.getAccountsPage("balance", false, null, 30);
+        Page<Account> second = h2Controller.getAccountsPage("balance", false, first.getNextCursor(), 30);
+
+        assertEquals(30, first.getItems().size());
+        assertEquals(20, second.getItems().size());
+        assertFalse(second.hasNext());
+        assertTrue(first.getItems().get(29).getBalance().compareTo(second.getItems().get(0).getBalance()) <= 0);
+    }
+
+    @Test
+    public void testInvalidCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> databaseController.getTransactionsPage("date", true, "not-a-cursor", 10));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        App.accounts.clear();
+        App.transactions.clear();
+    }
+
+    private static DataSource h2DataSource(String name) {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        return h2;
+    }
+
+    // Fills App.accounts and App.transactions with a repeatable set of accounts, transfers and payments
+    private static void loadSyntheticData() {
+        Random random = new Random(42);
+        App.accounts.clear();
+        App.transactions.clear();
+        for (int i = 0; i < 50; i++) {
+            App.accounts.add(new Account(new UUID(0, i), "Account " + i, random.nextInt(100_000) / 100.0, false, "EH1 1AA"));
+        }
+        String[] businesses = {"ALD", "AMA", "ARG", "BOO", "BOT"};
+        for (int i = 0; i < 2000; i++) {
+            String from = i % 10 == 0 ? null : App.accounts.get(random.nextInt(50)).getId();
+            String to = i % 3 == 0 ? businesses[random.nextInt(businesses.length)] : App.accounts.get(random.nextInt(50)).getId();
+            App.transactions.add(new Transaction(UUID.randomUUID(), random.nextInt(50_000) / 100.0, "2023-01-01 00:00", from, to, "PAYMENT"));
+        }
+    }
+
+    private static long countPayments(String business) {
+        return App.transactions.stream().filter(transaction -> business.equals(transaction.getTo())).count();
+    }
+
+    private static Map<String, Long> categoryTotals(List<CategoryAmount> categoryAmounts) {
+        Map<String, Long> totals = new TreeMap<>();
+        for (CategoryAmount categoryAmount : categoryAmounts) {
+            totals.put(categoryAmount.getCategory(), categoryAmount.getAmountPence());
+        }
+        return totals;
+    }
+
+    // The original O(transactions x accounts) replay, kept to check the new ones against
+    private static Map<String, Double> legacyReplay(List<Transaction> transactions) {
+        List<Account> accounts = new ArrayList<>();
+        for (Account account : App.accounts) {
+            accounts.add(new Account(UUID.fromString(account.getId()), account.getName(), account.getBalance().doubleValue(), false, account.getPostcode()));
+        }
+        for (Transaction transaction : transactions) {
+            for (Account account : accounts) {
+                if (account.getId().equals(transaction.getFrom())) {
+                    account.setBalance(account.getBalance().subtract(BigDecimal.valueOf(transaction.getAmount())).doubleValue());
+                }
+                if (account.getId().equals(transaction.getTo())) {
+                    account.setBalance(account.getBalance().add(BigDecimal.valueOf(transaction.getAmount())).doubleValue());
+                }
+            }
+        }
+        Map<String, Double> balances = new HashMap<>();
+        for (Account account : accounts) {
+            balances.put(account.getId(), account.getBalance().doubleValue());
+        }
+        return balances;
+    }
+}
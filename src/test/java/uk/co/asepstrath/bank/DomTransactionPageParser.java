@@ -0,0 +1,67 @@
+package uk.co.asepstrath.bank;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.UUID;
+
+/*
+The DOM parsing App.processTransactionPage used before TransactionPageParser, kept as the reference the streaming parser is
+checked against (TransactionPageParserTest) and compared with (the perf profile's TransactionPageParserBenchmark).
+ */
+public final class DomTransactionPageParser {
+
+    static final String RECORDED_PAGE = "/data/transactions-page.xml";
+
+    private DomTransactionPageParser() {
+    }
+
+    static byte[] recordedPage() throws IOException {
+        try (InputStream in = DomTransactionPageParser.class.getResourceAsStream(RECORDED_PAGE)) {
+            return in.readAllBytes();
+        }
+    }
+
+    static List<Transaction> parse(byte[] page) throws Exception {
+        List<Transaction> transactions = new ArrayList<>();
+        String responseBody = new Scanner(new ByteArrayInputStream(page), StandardCharsets.UTF_8).useDelimiter("\\A").next();
+
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document document = builder.parse(new InputSource(new StringReader(responseBody)));
+        document.getDocumentElement().normalize();
+
+        NodeList resultsList = document.getDocumentElement().getElementsByTagName("results");
+        for (int x = 0; x < resultsList.getLength(); x++) {
+            Node node = resultsList.item(x);
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                Element element = (Element) node;
+                if ("transactionModel".equals(element.getAttribute("xsi:type"))) {
+                    Node fromNode = element.getElementsByTagName("from").item(0);
+                    Node toNode = element.getElementsByTagName("to").item(0);
+                    transactions.add(new Transaction(
+                            UUID.fromString(element.getElementsByTagName("id").item(0).getTextContent()),
+                            Double.parseDouble(element.getElementsByTagName("amount").item(0).getTextContent()),
+                            element.getElementsByTagName("timestamp").item(0).getTextContent(),
+                            fromNode != null ? fromNode.getTextContent() : null,
+                            toNode != null ? toNode.getTextContent() : null,
+                            element.getElementsByTagName("type").item(0).getTextContent()));
+                }
+            }
+        }
+        return transactions;
+    }
+}
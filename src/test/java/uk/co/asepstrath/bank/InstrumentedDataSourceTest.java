@@ -0,0 +1,122 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class InstrumentedDataSourceTest {
+
+    private Connection connection;
+    private PreparedStatement preparedStatement;
+    private ResultSet resultSet;
+    private Logger log;
+    private QueryStats stats;
+    private DataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        DataSource target = mock(DataSource.class);
+        connection = mock(Connection.class);
+        preparedStatement = mock(PreparedStatement.class);
+        resultSet = mock(ResultSet.class);
+        log = mock(Logger.class);
+        when(target.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+
+        stats = new QueryStats(log, -1);
+        dataSource = InstrumentedDataSource.wrap(target, stats);
+    }
+
+    private QueryStats.Query only() {
+        assertEquals(1, stats.top(QueryStats.Order.TOTAL, 10).size());
+        return stats.top(QueryStats.Order.TOTAL, 10).get(0);
+    }
+
+    @Test
+    void testQueryIsRecordedWithRowsWhenTheResultSetCloses() throws SQLException {
+        when(resultSet.next()).thenReturn(true, true, true, false);
+
+        try (Connection c = dataSource.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT * FROM Accounts WHERE id = ?")) {
+            ps.setString(1, "abc");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rs.getString("Name");
+                }
+                assertTrue(stats.top(QueryStats.Order.TOTAL, 10).isEmpty(), "recorded only once the rows are read");
+            }
+        }
+
+        QueryStats.Query query = only();
+        assertEquals("SELECT * FROM Accounts WHERE id = ?", query.getSql());
+        assertEquals(1, query.getExecutions());
+        assertEquals(3, query.getRows());
+        verify(preparedStatement).setString(1, "abc");
+        verify(resultSet, times(3)).getString("Name");
+    }
+
+    @Test
+    void testUnclosedResultSetIsRecordedWhenTheStatementCloses() throws SQLException {
+        when(resultSet.next()).thenReturn(true, false);
+
+        try (Connection c = dataSource.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT Name FROM Accounts")) {
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+        }
+
+        assertEquals(1, only().getRows());
+    }
+
+    @Test
+    void testBatchRecordsTheUpdateCounts() throws SQLException {
+        when(preparedStatement.executeBatch()).thenReturn(new int[]{1, 1, 1});
+
+        try (Connection c = dataSource.getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE Accounts SET Balance = ? WHERE id = ?")) {
+            for (int i = 0; i < 3; i++) {
+                ps.setLong(1, i);
+                ps.setString(2, "id" + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        QueryStats.Query query = only();
+        assertEquals(1, query.getExecutions());
+        assertEquals(3, query.getRows());
+    }
+
+    @Test
+    void testFailedStatementIsCountedAndRethrown() throws SQLException {
+        Statement statement = mock(Statement.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeUpdate(anyString())).thenThrow(new SQLException("boom"));
+
+        try (Connection c = dataSource.getConnection();
+             Statement s = c.createStatement()) {
+            assertThrows(SQLException.class, () -> s.executeUpdate("DELETE FROM AccountCategorySpend"));
+        }
+
+        assertEquals(1, only().getErrors());
+    }
+
+    @Test
+    void testUnwrapReachesThePool() throws SQLException {
+        when(connection.unwrap(Connection.class)).thenReturn(connection);
+
+        assertSame(connection, dataSource.getConnection().unwrap(Connection.class));
+    }
+}
@@ -0,0 +1,65 @@
+package uk.co.asepstrath.bank;
+
+import io.jooby.Context;
+import io.jooby.Route;
+import io.jooby.StatusCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MetricsFilterTest {
+
+    private Context ctx;
+    private Route route;
+    private Route.Handler next;
+    private Metrics metrics;
+    private Route.Handler filtered;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ctx = mock(Context.class);
+        route = mock(Route.class);
+        next = mock(Route.Handler.class);
+        when(route.getMethod()).thenReturn("GET");
+        when(route.getPattern()).thenReturn("/scotbank/dashboard");
+        when(ctx.getRoute()).thenReturn(route);
+        when(next.apply(ctx)).thenReturn("next");
+        metrics = new Metrics();
+        filtered = new MetricsFilter(metrics).apply(next);
+    }
+
+    @Test
+    void testRequestIsRecordedWhenTheResponseCompletes() throws Exception {
+        ArgumentCaptor<Route.Complete> onComplete = ArgumentCaptor.forClass(Route.Complete.class);
+
+        assertEquals("next", filtered.apply(ctx));
+        verify(ctx).onComplete(onComplete.capture());
+        assertFalse(metrics.scrape().contains("status="), "nothing is recorded before the response is sent");
+
+        when(ctx.getResponseCode()).thenReturn(StatusCode.OK);
+        onComplete.getValue().apply(ctx);
+
+        assertTrue(metrics.scrape().contains(
+                "scotbank_http_requests_total{method=\"GET\",route=\"/scotbank/dashboard\",status=\"200\"} 1\n"));
+    }
+
+    @Test
+    void testRequestsToTheSameRouteShareCounters() throws Exception {
+        when(ctx.getResponseCode()).thenReturn(StatusCode.FOUND);
+        doAnswer(invocation -> {
+            invocation.<Route.Complete>getArgument(0).apply(ctx);
+            return ctx;
+        }).when(ctx).onComplete(any());
+
+        filtered.apply(ctx);
+        filtered.apply(ctx);
+
+        assertTrue(metrics.scrape().contains(
+                "scotbank_http_requests_total{method=\"GET\",route=\"/scotbank/dashboard\",status=\"302\"} 2\n"));
+        verify(route, times(1)).getPattern();
+    }
+}
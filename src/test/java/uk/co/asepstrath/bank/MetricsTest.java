@@ -0,0 +1,68 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @Test
+    void testHistogramBucketsAreCumulative() {
+        LatencyHistogram histogram = new LatencyHistogram(0.001, 0.01);
+        histogram.record(500_000);     // 0.5 ms
+        histogram.record(1_000_000);   // exactly on the first bound
+        histogram.record(5_000_000);   // 5 ms
+        histogram.record(50_000_000);  // 50 ms, only in +Inf
+
+        assertArrayEquals(new long[]{2, 3, 4}, histogram.getCumulativeCounts());
+        assertEquals(4, histogram.getCount());
+        assertEquals(0.0565, histogram.getSumSeconds(), 1e-9);
+    }
+
+    @Test
+    void testScrapeReportsRouteStatusesAndLatency() {
+        Metrics metrics = new Metrics();
+        Metrics.RouteMetrics dashboard = metrics.route("GET", "/scotbank/dashboard");
+        dashboard.record(200, 2_000_000);
+        dashboard.record(200, 3_000_000);
+        dashboard.record(302, 1_000_000);
+
+        String scrape = metrics.scrape();
+
+        assertTrue(scrape.contains("# TYPE scotbank_http_requests_total counter\n"));
+        assertTrue(scrape.contains("scotbank_http_requests_total{method=\"GET\",route=\"/scotbank/dashboard\",status=\"200\"} 2\n"));
+        assertTrue(scrape.contains("scotbank_http_requests_total{method=\"GET\",route=\"/scotbank/dashboard\",status=\"302\"} 1\n"));
+        assertTrue(scrape.contains("scotbank_http_request_duration_seconds_bucket{method=\"GET\",route=\"/scotbank/dashboard\",le=\"0.001\"} 1\n"));
+        assertTrue(scrape.contains("scotbank_http_request_duration_seconds_bucket{method=\"GET\",route=\"/scotbank/dashboard\",le=\"0.0025\"} 2\n"));
+        assertTrue(scrape.contains("scotbank_http_request_duration_seconds_bucket{method=\"GET\",route=\"/scotbank/dashboard\",le=\"+Inf\"} 3\n"));
+        assertTrue(scrape.contains("scotbank_http_request_duration_seconds_sum{method=\"GET\",route=\"/scotbank/dashboard\"} 0.006\n"));
+        assertTrue(scrape.contains("scotbank_http_request_duration_seconds_count{method=\"GET\",route=\"/scotbank/dashboard\"} 3\n"));
+    }
+
+    @Test
+    void testSameRouteIsRecordedOnce() {
+        Metrics metrics = new Metrics();
+        assertSame(metrics.route("POST", "/scotbank/transfer"), metrics.route("POST", "/scotbank/transfer"));
+        assertNotSame(metrics.route("GET", "/scotbank/transfer"), metrics.route("POST", "/scotbank/transfer"));
+    }
+
+    @Test
+    void testCollectorsAreIncluded() {
+        Metrics metrics = new Metrics();
+        TransferMetrics transfers = new TransferMetrics();
+        transfers.record(DatabaseController.TransferResult.COMPLETED, 1250);
+        transfers.record(DatabaseController.TransferResult.INSUFFICIENT_FUNDS, 99_999);
+        metrics.register(transfers);
+
+        String scrape = metrics.scrape();
+
+        assertTrue(scrape.contains("scotbank_transfers_total{result=\"completed\"} 1\n"));
+        assertTrue(scrape.contains("scotbank_transfers_total{result=\"insufficient_funds\"} 1\n"));
+        assertTrue(scrape.contains("scotbank_transfer_amount_pence_total 1250\n"));
+    }
+
+    @Test
+    void testLabelValuesAreEscaped() {
+        assertEquals("table=\"a \\\"quoted\\\" \\\\ name\"", Metrics.Writer.labels("table", "a \"quoted\" \\ name"));
+    }
+}
@@ -0,0 +1,43 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void testParse() {
+        assertEquals(1250, Money.parse("12.5"));
+        assertEquals(1234, Money.parse("12.34"));
+        assertEquals(1200, Money.parse("12"));
+        assertEquals(7, Money.parse("0.07"));
+        assertEquals(50, Money.parse(".5"));
+        assertEquals(-350, Money.parse("-3.5"));
+        assertEquals(1000000000, Money.parse("1.0E7"));
+        assertEquals(1235, Money.parse("12.345")); // rounded half up
+        assertThrows(NumberFormatException.class, () -> Money.parse("abc"));
+    }
+
+    @Test
+    void testPoundsRoundTrip() {
+        assertEquals(29, Money.ofPounds(0.29));
+        assertEquals(0.29, Money.toPounds(29));
+        assertEquals(new BigDecimal("23.01"), Money.toBigDecimal(2301));
+    }
+
+    @Test
+    void testSumsDoNotDrift() {
+        long pence = 0;
+        double pounds = 0;
+        for (int i = 0; i < 1000; i++) {
+            pence += Money.ofPounds(0.1);
+            pounds += 0.1;
+        }
+        assertEquals(10000, pence);
+        assertNotEquals(100.0, pounds);
+        assertEquals(100.0, Money.toPounds(pence));
+    }
+}
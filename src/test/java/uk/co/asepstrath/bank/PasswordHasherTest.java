@@ -0,0 +1,60 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PasswordHasherTest {
+
+    @Test
+    void testHashAndVerify() {
+        PasswordHasher hasher = new PasswordHasher(1, 4, 4, mock(Logger.class));
+        try {
+            String hash = hasher.hash("password123");
+
+            assertTrue(hash.startsWith("$2a$04$"));
+            assertTrue(hasher.verify("password123", hash));
+            assertFalse(hasher.verify("wrongpassword", hash));
+            assertEquals(3, hasher.getCompleted());
+            assertTrue(hasher.getHashNanos() > 0);
+        } finally {
+            hasher.shutdown();
+        }
+    }
+
+    @Test
+    void testRejectsWhenSaturated() throws InterruptedException {
+        PasswordHasher hasher = new PasswordHasher(1, 1, 4, mock(Logger.class));
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            // One task holds the only thread and a second fills the queue
+            callers.submit(() -> hasher.run(() -> {
+                running.countDown();
+                return release.await(5, TimeUnit.SECONDS);
+            }));
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            callers.submit(() -> hasher.run(() -> true));
+            while (hasher.getQueueDepth() < 1) {
+                Thread.sleep(1);
+            }
+
+            assertThrows(RejectedExecutionException.class, () -> hasher.verify("password", "$2a$04$invalid"));
+            assertEquals(1, hasher.getRejected());
+        } finally {
+            release.countDown();
+            callers.shutdown();
+            callers.awaitTermination(5, TimeUnit.SECONDS);
+            hasher.shutdown();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class QueryStatsTest {
+
+    private Logger log;
+    private QueryStats stats;
+
+    @BeforeEach
+    void setUp() {
+        log = mock(Logger.class);
+        stats = new QueryStats(log, 100);
+    }
+
+    @Test
+    void testNormaliseCollapsesWhitespaceAndLiterals() {
+        assertEquals("SELECT * FROM Accounts WHERE Name = ? AND Balance > ? LIMIT ?",
+                stats.normalise("SELECT *\n   FROM Accounts WHERE Name = 'O''Brien' AND Balance > 10.5 LIMIT 10"));
+        assertEquals("SELECT id FROM idx_v3 WHERE a = ?", stats.normalise("SELECT id FROM idx_v3 WHERE a = ?"));
+    }
+
+    @Test
+    void testExecutionsOfTheSameStatementAreGrouped() {
+        stats.record("SELECT * FROM Accounts LIMIT 10", 2_000_000, 1_000_000, 10, false, Map.of(), 0);
+        stats.record("SELECT * FROM Accounts  LIMIT 20", 4_000_000, 1_000_000, 20, true, Map.of(), 0);
+
+        List<QueryStats.Query> top = stats.top(QueryStats.Order.TOTAL, 10);
+        assertEquals(1, top.size());
+        QueryStats.Query query = top.get(0);
+        assertEquals("SELECT * FROM Accounts LIMIT ?", query.getSql());
+        assertEquals(2, query.getExecutions());
+        assertEquals(1, query.getErrors());
+        assertEquals(30, query.getRows());
+        assertEquals(8_000_000, query.getTotalNanos());
+        assertEquals(2_000_000, query.getFetchNanos());
+        assertEquals(5_000_000, query.getMaxNanos());
+        assertEquals(4_000_000, query.getMeanNanos());
+    }
+
+    @Test
+    void testTopOrdersByTheRequestedMeasure() {
+        // Many quick executions against one slow one
+        for (int i = 0; i < 100; i++) {
+            stats.record("SELECT Name FROM Accounts WHERE id = ?", 1_000_000, 0, 1, false, Map.of(), 0);
+        }
+        stats.record("SELECT * FROM Transactions", 50_000_000, 0, 1000, false, Map.of(), 0);
+
+        assertEquals("SELECT Name FROM Accounts WHERE id = ?", stats.top(QueryStats.Order.TOTAL, 1).get(0).getSql());
+        assertEquals("SELECT * FROM Transactions", stats.top(QueryStats.Order.MEAN, 1).get(0).getSql());
+        assertEquals("SELECT * FROM Transactions", stats.top(QueryStats.Order.MAX, 1).get(0).getSql());
+        assertEquals(2, stats.top(QueryStats.Order.MAX, 5).size());
+    }
+
+    @Test
+    void testSlowStatementsAreLoggedWithParameters() {
+        stats.record("SELECT * FROM Accounts WHERE id = ?", 1_000_000, 0, 1, false, Map.of(1, "fast"), 0);
+        verifyNoInteractions(log);
+
+        stats.record("SELECT * FROM Accounts WHERE id = ?", 150_000_000, 20_000_000, 1, false, Map.of(1, "abc"), 0);
+        verify(log).warn(anyString(), eq(170L), eq(150L), eq(20L), eq(1L), eq("SELECT * FROM Accounts WHERE id = ?"), eq("[1='abc']"));
+    }
+
+    @Test
+    void testPasswordParametersAreNeverLogged() {
+        stats.setSlowQueryMillis(0);
+        stats.record("INSERT INTO Users (Email, Password) VALUES (?, ?)", 1_000, 0, 1, false, Map.of(1, "a@b.c", 2, "$2a$10$hash"), 0);
+
+        verify(log).warn(anyString(), any(), any(), any(), any(), any(), eq("[parameters hidden]"));
+    }
+
+    @Test
+    void testSlowLogCanBeTurnedOff() {
+        stats.setSlowQueryMillis(-1);
+        stats.record("SELECT * FROM Transactions", Long.MAX_VALUE / 4, 0, 0, false, Map.of(), 0);
+
+        verifyNoInteractions(log);
+    }
+}
@@ -0,0 +1,69 @@
+package uk.co.asepstrath.bank;
+
+import io.jooby.Context;
+import io.jooby.MediaType;
+import io.jooby.Route;
+import io.jooby.StatusCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReadinessFilterTest {
+
+    private Context ctx;
+    private Route.Handler next;
+    private StartupStages stages;
+    private Route.Handler filtered;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ctx = mock(Context.class);
+        next = mock(Route.Handler.class);
+        when(next.apply(ctx)).thenReturn("next");
+        when(ctx.setResponseCode(any(StatusCode.class))).thenReturn(ctx);
+        when(ctx.send(anyString())).thenReturn(ctx);
+        stages = new StartupStages(mock(Logger.class));
+        filtered = new ReadinessFilter(stages).apply(next);
+    }
+
+    @Test
+    void testRequestsAreTurnedAwayWhileLoading() throws Exception {
+        stages.run(StartupStages.Stage.SCHEMA, () -> { });
+
+        assertSame(ctx, filtered.apply(ctx));
+        verify(ctx).setResponseCode(StatusCode.SERVICE_UNAVAILABLE);
+        verify(ctx).setResponseHeader("Retry-After", ReadinessFilter.RETRY_AFTER_SECONDS);
+        verify(ctx).setResponseType(MediaType.text);
+        verify(next, never()).apply(any());
+    }
+
+    @Test
+    void testRequestsPassOnceReady() throws Exception {
+        for (StartupStages.Stage stage : StartupStages.Stage.values()) {
+            stages.run(stage, () -> { });
+        }
+
+        assertEquals("next", filtered.apply(ctx));
+        verify(ctx, never()).setResponseCode(any(StatusCode.class));
+    }
+
+    @Test
+    void testRequestsAreTurnedAwayAfterARequiredStageFails() throws Exception {
+        for (StartupStages.Stage stage : StartupStages.Stage.values()) {
+            stages.run(stage, () -> {
+                if (stage == StartupStages.Stage.REPLAY) {
+                    throw new IllegalStateException("replay failed");
+                }
+            });
+        }
+
+        assertSame(ctx, filtered.apply(ctx));
+        verify(ctx).setResponseCode(StatusCode.SERVICE_UNAVAILABLE);
+        verify(ctx).send(contains("failed to start"));
+        verify(next, never()).apply(any());
+    }
+}
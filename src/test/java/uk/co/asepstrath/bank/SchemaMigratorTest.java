@@ -0,0 +1,75 @@
+package uk.co.asepstrath.bank;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class SchemaMigratorTest {
+
+    private JdbcDataSource dataSource;
+    private SchemaMigrator migrator;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:migrations" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        migrator = new SchemaMigrator(mock(Logger.class));
+    }
+
+    @Test
+    void testMigrateRecordsLatestVersion() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            migrator.migrate(connection);
+
+            int latest = SchemaMigrator.MIGRATIONS.get(SchemaMigrator.MIGRATIONS.size() - 1).getVersion();
+            assertEquals(latest, migrator.currentVersion(connection));
+        }
+    }
+
+    @Test
+    void testMigrateTwiceAppliesEachMigrationOnce() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            migrator.migrate(connection);
+            migrator.migrate(connection);
+
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM SchemaVersion")) {
+                rs.next();
+                assertEquals(SchemaMigrator.MIGRATIONS.size(), rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    void testMigrateCreatesLookupIndexes() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            migrator.migrate(connection);
+
+            assertTrue(indexExists(connection, "IDX_TRANSACTIONS_FROM"));
+            assertTrue(indexExists(connection, "IDX_TRANSACTIONS_TO"));
+            assertTrue(indexExists(connection, "IDX_USERS_EMAIL"));
+            assertTrue(indexExists(connection, "IDX_USERS_ACCOUNT"));
+            assertTrue(indexExists(connection, "IDX_BUSINESSES_ID"));
+        }
+    }
+
+    private boolean indexExists(Connection connection, String name) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME = ?")) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1) > 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpendingLeaderboardTest {
+
+    private static final String ALICE = new UUID(0, 1).toString();
+    private static final String BOB = new UUID(0, 2).toString();
+    private static final String CAROL = new UUID(0, 3).toString();
+
+    // A UTC clock the test moves forward by hand
+    private static final class MovableClock extends Clock {
+        private Instant now = Instant.parse("2023-06-30T12:00:00Z");
+
+        void advanceDays(int days) {
+            now = now.plus(days, ChronoUnit.DAYS);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    private static SpendingLeaderboard leaderboard(int size, int windowDays) {
+        return leaderboard(size, windowDays, new MovableClock());
+    }
+
+    private static SpendingLeaderboard leaderboard(int size, int windowDays, Clock clock) {
+        SpendingLeaderboard leaderboard = new SpendingLeaderboard(size, windowDays, clock);
+        leaderboard.registerAccount(ALICE, "Alice", "EH1 1AA");
+        leaderboard.registerAccount(BOB, "Bob", "EH1 1AA");
+        leaderboard.registerAccount(CAROL, "Carol", "EH1 1AA");
+        return leaderboard;
+    }
+
+    @Test
+    void testRanksByTotalSpend() {
+        SpendingLeaderboard leaderboard = leaderboard(2, 0);
+        leaderboard.recordSpend(ALICE, 500, "2023-01-01 10:00");
+        leaderboard.recordSpend(BOB, 300, "2023-01-01 10:00");
+        leaderboard.recordSpend(CAROL, 400, "2023-01-01 10:00");
+        leaderboard.recordSpend(BOB, 300, "2023-01-02 10:00");
+        leaderboard.recordSpend(null, 10_000, "2023-01-02 10:00"); // deposits have no payer
+
+        List<SpendingLeaderboard.Spender> top = leaderboard.top();
+
+        assertEquals(2, top.size());
+        assertEquals("Bob", top.get(0).getName());
+        assertEquals(600, top.get(0).getSpentPence());
+        assertEquals("Alice", top.get(1).getName());
+    }
+
+    @Test
+    void testWindowOnlyCountsRecentSpending() {
+        SpendingLeaderboard leaderboard = leaderboard(3, 30);
+        leaderboard.recordSpend(ALICE, 10_000, "2023-05-01 10:00"); // outside the last 30 days
+        leaderboard.recordSpend(BOB, 200, "2023-06-29 10:00");
+        leaderboard.recordSpend(BOB, 100, "2023-06-30 09:00");
+        leaderboard.recordSpend(CAROL, 250, "2023-06-01 10:00");
+
+        List<SpendingLeaderboard.Spender> top = leaderboard.top();
+
+        assertEquals("Bob", top.get(0).getName());
+        assertEquals(300, top.get(0).getSpentPence());
+        assertEquals("Carol", top.get(1).getName());
+        assertEquals(0, top.get(2).getSpentPence());
+    }
+
+    @Test
+    void testExpiredSpendingLeavesTheRankingAsDaysPass() {
+        MovableClock clock = new MovableClock();
+        SpendingLeaderboard leaderboard = leaderboard(3, 3, clock);
+        leaderboard.recordSpend(ALICE, 500, "2023-06-28 10:00");
+        leaderboard.recordSpend(BOB, 300, "2023-06-30 10:00");
+        assertEquals("Alice", leaderboard.top().get(0).getName());
+
+        // 1 July: the window is now 29 June to 1 July, so Alice's spend has expired
+        clock.advanceDays(1);
+        List<SpendingLeaderboard.Spender> top = leaderboard.top();
+        assertEquals("Bob", top.get(0).getName());
+        assertEquals(300, top.get(0).getSpentPence());
+        assertEquals(0, top.get(2).getSpentPence());
+
+        // 2 July: a spend made today counts even though nothing has read the ranking since midnight
+        clock.advanceDays(1);
+        leaderboard.recordSpend(CAROL, 100, "2023-07-02 08:00");
+        top = leaderboard.top();
+        assertEquals("Bob", top.get(0).getName());
+        assertEquals("Carol", top.get(1).getName());
+        assertEquals(100, top.get(1).getSpentPence());
+
+        // 3 July: Bob's spend has gone too
+        clock.advanceDays(1);
+        top = leaderboard.top();
+        assertEquals("Carol", top.get(0).getName());
+        assertEquals(100, top.get(0).getSpentPence());
+        assertEquals(0, top.get(1).getSpentPence());
+        assertEquals(3, top.size());
+    }
+
+    @Test
+    void testRebuildMatchesTransactions() {
+        SpendingLeaderboard leaderboard = new SpendingLeaderboard(10, 0);
+        List<Account> accounts = List.of(new Account(UUID.fromString(ALICE), "Alice", 0, false, "EH1 1AA"),
+                new Account(UUID.fromString(BOB), "Bob", 0, false, "EH1 1AA"));
+        List<Transaction> transactions = List.of(
+                new Transaction(UUID.randomUUID(), 1.50, "2023-01-01 10:00", ALICE, "ALD", "PAYMENT"),
+                new Transaction(UUID.randomUUID(), 2.25, "2023-01-01 10:00", BOB, ALICE, "TRANSFER"),
+                new Transaction(UUID.randomUUID(), 1.00, "2023-01-01 10:00", ALICE, BOB, "TRANSFER"));
+
+        leaderboard.rebuild(accounts, transactions);
+
+        List<SpendingLeaderboard.Spender> top = leaderboard.top();
+        assertEquals(2, top.size());
+        assertEquals(250, top.get(0).getSpentPence());
+        assertEquals(225, top.get(1).getSpentPence());
+    }
+}
@@ -0,0 +1,101 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StartupSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRoundTripKeepsEveryField() throws IOException {
+        UUID payer = UUID.randomUUID();
+        UUID payee = UUID.randomUUID();
+        List<Account> accounts = List.of(
+                Account.ofPence(payer, "Zoë O'Brien", 123_456, true, "EH1 1AA"),
+                Account.ofPence(payee, "Payee", -5, false, null));
+        List<Transaction> transactions = List.of(
+                Transaction.ofPence(UUID.randomUUID(), 1050, "2023-04-01 09:30", payer.toString(), payee.toString(), "TRANSFER"),
+                Transaction.ofPence(UUID.randomUUID(), 299, "2023-04-01 10:00", payer.toString(), "ALD", "PAYMENT"),
+                Transaction.ofPence(null, 10_000, "2023-04-02 00:00", null, payer.toString(), "DEPOSIT"));
+        Path file = tempDir.resolve("startup.snapshot");
+
+        StartupSnapshot.write(file, accounts, transactions, 1_700_000_000_000L);
+        StartupSnapshot.Contents contents = StartupSnapshot.read(file);
+
+        assertEquals(1_700_000_000_000L, contents.getCreatedMillis());
+        assertEquals(1_700_000_000_000L, StartupSnapshot.createdMillis(file));
+        assertEquals(accounts.size(), contents.getAccounts().size());
+        for (int i = 0; i < accounts.size(); i++) {
+            Account expected = accounts.get(i);
+            Account actual = contents.getAccounts().get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getBalancePence(), actual.getBalancePence());
+            assertEquals(expected.isRoundUpEnabled(), actual.isRoundUpEnabled());
+            assertEquals(expected.getPostcode(), actual.getPostcode());
+        }
+        assertEquals(transactions.size(), contents.getTransactions().size());
+        for (int i = 0; i < transactions.size(); i++) {
+            Transaction expected = transactions.get(i);
+            Transaction actual = contents.getTransactions().get(i);
+            assertEquals(expected.getTransactionId(), actual.getTransactionId());
+            assertEquals(expected.getAmountPence(), actual.getAmountPence());
+            assertEquals(expected.getDate(), actual.getDate());
+            assertEquals(expected.getFrom(), actual.getFrom());
+            assertEquals(expected.getTo(), actual.getTo());
+            assertEquals(expected.getType(), actual.getType());
+        }
+    }
+
+    @Test
+    void testRecordsAreFixedWidthWithStringsStoredOnce() throws IOException {
+        UUID payer = UUID.randomUUID();
+        List<Account> accounts = List.of(Account.ofPence(payer, "Payer", 0, false, "EH1 1AA"));
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            transactions.add(Transaction.ofPence(UUID.randomUUID(), i, "2023-01-01 00:00", payer.toString(), "ALD", "PAYMENT"));
+        }
+        Path file = tempDir.resolve("startup.snapshot");
+
+        StartupSnapshot.write(file, accounts, transactions, 0);
+
+        // Payer, EH1 1AA, the date, the payer id, ALD and PAYMENT
+        int strings = 4 + "Payer".length() + 4 + "EH1 1AA".length() + 4 + "2023-01-01 00:00".length()
+                + 4 + payer.toString().length() + 4 + "ALD".length() + 4 + "PAYMENT".length();
+        assertEquals(StartupSnapshot.HEADER_BYTES + 101L * StartupSnapshot.RECORD_BYTES + strings, Files.size(file));
+    }
+
+    @Test
+    void testMissingOrForeignFilesAreRejected() throws IOException {
+        assertEquals(-1, StartupSnapshot.createdMillis(tempDir.resolve("missing.snapshot")));
+
+        Path foreign = tempDir.resolve("foreign.snapshot");
+        Files.writeString(foreign, "this is not a snapshot, just some text that is long enough");
+        assertEquals(-1, StartupSnapshot.createdMillis(foreign));
+        assertThrows(IOException.class, () -> StartupSnapshot.read(foreign));
+    }
+
+    @Test
+    void testTruncatedSnapshotIsRejected() throws IOException {
+        UUID payer = UUID.randomUUID();
+        Path file = tempDir.resolve("startup.snapshot");
+        StartupSnapshot.write(file, List.of(Account.ofPence(payer, "Payer", 0, false, "EH1 1AA")),
+                List.of(Transaction.ofPence(UUID.randomUUID(), 1, "2023-01-01 00:00", payer.toString(), "ALD", "PAYMENT")), 0);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+
+        assertThrows(IOException.class, () -> StartupSnapshot.read(file));
+    }
+}
@@ -0,0 +1,119 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StartupStagesTest {
+
+    private Logger log;
+    private StartupStages stages;
+
+    @BeforeEach
+    void setUp() {
+        log = mock(Logger.class);
+        stages = new StartupStages(log);
+    }
+
+    private void runAll() {
+        for (StartupStages.Stage stage : StartupStages.Stage.values()) {
+            stages.run(stage, () -> { });
+        }
+    }
+
+    @Test
+    void testReadyOnlyOnceEveryStageHasFinished() {
+        assertFalse(stages.isReady());
+        assertEquals(StartupStages.State.PENDING, stages.getState(StartupStages.Stage.SCHEMA));
+
+        stages.run(StartupStages.Stage.SCHEMA, () -> { });
+        assertEquals(StartupStages.State.DONE, stages.getState(StartupStages.Stage.SCHEMA));
+        assertFalse(stages.isReady());
+
+        runAll();
+        assertTrue(stages.isReady());
+        assertTrue(stages.report().startsWith("ready after"));
+    }
+
+    @Test
+    void testFailedRequiredStageKeepsTheInstanceUnready() {
+        assertFalse(stages.run(StartupStages.Stage.ACCOUNTS, () -> {
+            throw new IOException("upstream down");
+        }));
+
+        assertEquals(StartupStages.State.FAILED, stages.getState(StartupStages.Stage.ACCOUNTS));
+        assertEquals("java.io.IOException: upstream down", stages.getError(StartupStages.Stage.ACCOUNTS));
+        verify(log).error(contains("ACCOUNTS"), any(IOException.class));
+
+        for (StartupStages.Stage stage : StartupStages.Stage.values()) {
+            if (stage != StartupStages.Stage.ACCOUNTS) {
+                stages.run(stage, () -> { });
+            }
+        }
+        assertFalse(stages.isReady());
+        assertTrue(stages.hasFailed());
+        String report = stages.report();
+        assertTrue(report.startsWith("failed after"));
+        assertTrue(report.contains("accounts      failed"));
+        assertTrue(report.contains("upstream down  (required, not serving)"));
+    }
+
+    @Test
+    void testFailedBusinessesStageStillBecomesReady() {
+        assertFalse(stages.run(StartupStages.Stage.BUSINESSES, () -> {
+            throw new IOException("no such file");
+        }));
+        for (StartupStages.Stage stage : StartupStages.Stage.values()) {
+            if (stage != StartupStages.Stage.BUSINESSES) {
+                stages.run(stage, () -> { });
+            }
+        }
+
+        assertTrue(stages.isReady());
+        assertFalse(stages.hasFailed());
+        assertTrue(stages.report().startsWith("ready after"));
+    }
+
+    @Test
+    void testReportShowsRunningStages() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Boolean> transactions = executor.submit(() -> stages.run(StartupStages.Stage.TRANSACTIONS, () -> {
+            started.countDown();
+            release.await();
+        }));
+        started.await();
+
+        String report = stages.report();
+        assertTrue(report.startsWith("starting after"));
+        assertTrue(report.contains("transactions  running"));
+        assertTrue(report.contains("replay        pending"));
+
+        release.countDown();
+        assertTrue(transactions.get());
+        executor.shutdown();
+    }
+
+    @Test
+    void testCollectWritesStageStates() {
+        stages.run(StartupStages.Stage.SCHEMA, () -> { });
+        Metrics metrics = new Metrics();
+        metrics.register(stages);
+
+        String scrape = metrics.scrape();
+        assertTrue(scrape.contains("scotbank_startup_ready 0\n"));
+        assertTrue(scrape.contains("scotbank_startup_stage_state{stage=\"schema\"} 2\n"));
+        assertTrue(scrape.contains("scotbank_startup_stage_state{stage=\"replay\"} 0\n"));
+    }
+}
@@ -0,0 +1,64 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class TransactionPageParserTest {
+
+    private TransactionPageParser parser;
+
+    @BeforeEach
+    void setUp() {
+        parser = new TransactionPageParser(mock(Logger.class));
+    }
+
+    @Test
+    void testParseMatchesDomParser() throws Exception {
+        byte[] page = DomTransactionPageParser.recordedPage();
+
+        List<Transaction> expected = DomTransactionPageParser.parse(page);
+        List<Transaction> actual = parser.parse(new ByteArrayInputStream(page), 0);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+    }
+
+    @Test
+    void testParseMissingFromAndTo() throws Exception {
+        String page = "<pageResult xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+                + "<results xsi:type=\"transactionModel\"><amount>12.5</amount><id>6a50df4d-b4d6-4a3a-8746-9a4d8cdb305f</id>"
+                + "<timestamp>2023-03-27 13:55</timestamp><type>DEPOSIT</type></results>"
+                + "<results xsi:type=\"somethingElse\"><id>not-a-transaction</id></results>"
+                + "</pageResult>";
+
+        List<Transaction> transactions = parser.parse(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), 3);
+
+        assertEquals(1, transactions.size());
+        assertNull(transactions.get(0).getFrom());
+        assertNull(transactions.get(0).getTo());
+        assertEquals(12.5, transactions.get(0).getAmount());
+        assertEquals("DEPOSIT", transactions.get(0).getType());
+    }
+
+    @Test
+    void testParseSkipsInvalidTransaction() throws Exception {
+        String page = "<pageResult xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+                + "<results xsi:type=\"transactionModel\"><amount>abc</amount><id>6a50df4d-b4d6-4a3a-8746-9a4d8cdb305f</id>"
+                + "<timestamp>2023-03-27 13:55</timestamp><type>DEPOSIT</type></results>"
+                + "</pageResult>";
+
+        List<Transaction> transactions = parser.parse(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), 3);
+
+        assertTrue(transactions.isEmpty());
+    }
+}
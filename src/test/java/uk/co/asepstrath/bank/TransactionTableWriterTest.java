@@ -0,0 +1,49 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionTableWriterTest {
+
+    @Test
+    void testWritesOneRowPerTransaction() throws IOException {
+        StringWriter out = new StringWriter();
+        TransactionTableWriter table = new TransactionTableWriter(out);
+
+        table.writeHeader("Transaction History", "Transactions");
+        for (int i = 0; i < 3; i++) {
+            table.writeRow(new Transaction(UUID.randomUUID(), 10.5, "2023-01-01 00:00", "from", "to", "PAYMENT"));
+        }
+        table.writeFooter();
+
+        String html = out.toString();
+        assertEquals(3, table.getRows());
+        assertEquals(3, html.split("<tr class=\"transaction-box\">", -1).length - 1);
+        assertTrue(html.contains("<li><a class=\"active\">Transactions</a></li>"));
+        assertTrue(html.endsWith("</html>\n"));
+    }
+
+    @Test
+    void testEscapesValues() throws IOException {
+        StringWriter out = new StringWriter();
+        TransactionTableWriter table = new TransactionTableWriter(out);
+
+        table.writeRow(new Transaction(UUID.randomUUID(), 1.0, "2023-01-01 00:00", null, "H&M", "<b>PAYMENT</b>"));
+
+        String html = out.toString();
+        assertTrue(html.contains("<td>H&amp;M</td>"));
+        assertTrue(html.contains("<td>&lt;b&gt;PAYMENT&lt;/b&gt;</td>"));
+        assertTrue(html.contains("<td></td>"));
+    }
+
+    @Test
+    void testEscapeLeavesPlainTextAlone() {
+        assertEquals("Aldi", TransactionTableWriter.escape("Aldi"));
+        assertEquals("", TransactionTableWriter.escape(null));
+    }
+}
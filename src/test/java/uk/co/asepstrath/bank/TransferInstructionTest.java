@@ -0,0 +1,48 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferInstructionTest {
+
+    private static final UUID PAYER = new UUID(0, 1);
+    private static final UUID PAYEE = new UUID(0, 2);
+
+    @Test
+    void testParseCsv() {
+        List<TransferInstruction> instructions = TransferInstruction.parseCsv(
+                "from,to,amount\n" + PAYER + "," + PAYEE + ",12.50\n\n" + PAYER + ",not-an-id,1\n" + PAYER + "," + PAYEE + "\n");
+
+        assertEquals(3, instructions.size());
+        assertEquals(PAYER, instructions.get(0).getFrom());
+        assertEquals(PAYEE, instructions.get(0).getTo());
+        assertEquals(1250, instructions.get(0).getAmountPence());
+        assertTrue(instructions.get(0).isValid());
+        assertFalse(instructions.get(1).isValid());
+        assertFalse(instructions.get(2).isValid());
+    }
+
+    @Test
+    void testParseJson() {
+        List<TransferInstruction> instructions = TransferInstruction.parseJson("["
+                + "{\"from\": \"" + PAYER + "\", \"to\": \"" + PAYEE + "\", \"amount\": 10.05},"
+                + "{\"from\": \"" + PAYER + "\", \"to\": \"" + PAYEE + "\", \"amount\": \"3\"},"
+                + "{\"from\": \"" + PAYER + "\", \"to\": \"" + PAYER + "\", \"amount\": 1},"
+                + "42]");
+
+        assertEquals(4, instructions.size());
+        assertEquals(1005, instructions.get(0).getAmountPence());
+        assertEquals(300, instructions.get(1).getAmountPence());
+        assertFalse(instructions.get(2).isValid()); // same account on both sides
+        assertFalse(instructions.get(3).isValid());
+    }
+
+    @Test
+    void testParseJsonRejectsNonArray() {
+        assertThrows(IllegalArgumentException.class, () -> TransferInstruction.parseJson("{\"from\": \"x\"}"));
+    }
+}
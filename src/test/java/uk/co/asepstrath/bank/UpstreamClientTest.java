@@ -0,0 +1,167 @@
+package uk.co.asepstrath.bank;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UpstreamClientTest {
+
+    private HttpServer server;
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final Queue<Integer> pageStatuses = new ConcurrentLinkedQueue<>();
+    private final Queue<String> authorizations = new ConcurrentLinkedQueue<>();
+    private volatile String currentToken = "token-1";
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/oauth2/token", exchange -> {
+            tokenRequests.incrementAndGet();
+            assertEquals("POST", exchange.getRequestMethod());
+            respond(exchange, 200, "{\"access_token\":\"" + currentToken + "\",\"expires_in\":3600}");
+        });
+        server.createContext("/api/page", exchange -> {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            authorizations.add(authorization);
+            Integer status = pageStatuses.poll();
+            if (!("Bearer " + currentToken).equals(authorization)) {
+                status = 401;
+            }
+            respond(exchange, status == null ? 200 : status, "page body");
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private UpstreamClient client(int attempts) {
+        return new UpstreamClient("http://127.0.0.1:" + server.getAddress().getPort(), "id", "secret",
+                1000, 5000, attempts, mock(Logger.class));
+    }
+
+    // Gzips the body whenever the client asks for it
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String readBody(java.io.InputStream body) throws IOException {
+        return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testTokenIsFetchedOnceAndGzipIsDecoded() throws Exception {
+        UpstreamClient client = client(3);
+
+        assertEquals("page body", client.get("api/page", UpstreamClientTest::readBody));
+        assertEquals("page body", client.get("api/page", UpstreamClientTest::readBody));
+
+        assertEquals(1, tokenRequests.get());
+        assertEquals(1, client.getTokensFetched());
+        assertTrue(authorizations.stream().allMatch("Bearer token-1"::equals));
+    }
+
+    @Test
+    void testConcurrentCallersShareOneTokenFetch() throws Exception {
+        UpstreamClient client = client(3);
+        List<Future<String>> pages = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 20; i++) {
+                pages.add(executor.submit(() -> client.get("api/page", UpstreamClientTest::readBody)));
+            }
+            for (Future<String> page : pages) {
+                assertEquals("page body", page.get());
+            }
+        }
+        assertEquals(1, tokenRequests.get());
+    }
+
+    @Test
+    void testServerErrorsAreRetried() throws Exception {
+        pageStatuses.add(503);
+        pageStatuses.add(429);
+        UpstreamClient client = client(3);
+
+        assertEquals("page body", client.get("api/page", UpstreamClientTest::readBody));
+        assertEquals(2, client.getRetries());
+        assertEquals(0, client.getFailures());
+    }
+
+    @Test
+    void testGivesUpAfterEveryAttempt() {
+        pageStatuses.add(500);
+        pageStatuses.add(500);
+        UpstreamClient client = client(2);
+
+        IOException e = assertThrows(IOException.class, () -> client.get("api/page", UpstreamClientTest::readBody));
+        assertTrue(e.getMessage().contains("500"));
+        assertEquals(1, client.getRetries());
+        assertEquals(1, client.getFailures());
+    }
+
+    @Test
+    void testClientErrorsAreNotRetried() {
+        pageStatuses.add(404);
+        UpstreamClient client = client(3);
+
+        assertThrows(IOException.class, () -> client.get("api/page", UpstreamClientTest::readBody));
+        assertEquals(0, client.getRetries());
+    }
+
+    @Test
+    void testRejectedTokenIsReplaced() throws Exception {
+        UpstreamClient client = client(3);
+        client.get("api/page", UpstreamClientTest::readBody);
+
+        currentToken = "token-2"; // upstream revokes the first token
+        assertEquals("page body", client.get("api/page", UpstreamClientTest::readBody));
+        assertEquals(2, tokenRequests.get());
+    }
+
+    @Test
+    void testParserFailuresAreNotRetried() {
+        UpstreamClient client = client(3);
+
+        assertThrows(IOException.class, () -> client.get("api/page", body -> {
+            throw new IllegalArgumentException("not a page");
+        }));
+        assertEquals(0, client.getRetries());
+        assertEquals(1, client.getFailures());
+    }
+}
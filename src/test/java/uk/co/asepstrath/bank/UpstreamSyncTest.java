@@ -0,0 +1,129 @@
+package uk.co.asepstrath.bank;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UpstreamSyncTest {
+
+    private DatabaseController database;
+    private UpstreamSync.Source source;
+    private final List<Account> accounts = List.of(Account.ofPence(UUID.randomUUID(), "New Account", 10_000, false, "G1 1XQ"));
+
+    @BeforeEach
+    void setUp() throws Exception {
+        database = mock(DatabaseController.class);
+        source = mock(UpstreamSync.Source.class);
+        when(source.fetchAccounts()).thenReturn(accounts);
+    }
+
+    private static List<Transaction> page(int transactions) {
+        List<Transaction> page = new ArrayList<>();
+        for (int i = 0; i < transactions; i++) {
+            page.add(Transaction.ofPence(UUID.randomUUID(), 100, "2024-03-01 10:00", UUID.randomUUID().toString(), "CAF", "PAYMENT"));
+        }
+        return page;
+    }
+
+    @Test
+    void testReadsFromTheLastPageUntilAnEmptyOne() throws Exception {
+        List<Transaction> page9 = page(3);
+        List<Transaction> page10 = page(2);
+        when(source.fetchTransactionPage(9)).thenReturn(page9);
+        when(source.fetchTransactionPage(10)).thenReturn(page10);
+        when(source.fetchTransactionPage(11)).thenReturn(List.of());
+        when(database.mergeUpstream(anyList(), anyList())).thenReturn(new DatabaseController.MergeResult(1, 2));
+
+        UpstreamSync sync = new UpstreamSync(database, source, 9, 0, 20, mock(Logger.class));
+        sync.run();
+
+        List<Transaction> expected = new ArrayList<>(page9);
+        expected.addAll(page10);
+        verify(database).mergeUpstream(accounts, expected);
+        verify(source, never()).fetchTransactionPage(12);
+        assertEquals(10, sync.getLastPage());
+        assertEquals(1, sync.getSucceeded());
+        assertEquals(1, sync.getAccountsMerged());
+        assertEquals(2, sync.getTransactionsMerged());
+        assertTrue(sync.getLastSyncMillis() > 0);
+        assertTrue(sync.getLagMillis() < 60_000);
+    }
+
+    @Test
+    void testAnErrorPastTheFirstPageEndsTheRun() throws Exception {
+        when(source.fetchTransactionPage(3)).thenReturn(page(1));
+        when(source.fetchTransactionPage(4)).thenThrow(new IOException("404"));
+        when(database.mergeUpstream(anyList(), anyList())).thenReturn(new DatabaseController.MergeResult(0, 1));
+
+        UpstreamSync sync = new UpstreamSync(database, source, 3, 0, 20, mock(Logger.class));
+        sync.run();
+
+        assertEquals(3, sync.getLastPage());
+        assertEquals(1, sync.getSucceeded());
+        assertEquals(0, sync.getFailed());
+    }
+
+    @Test
+    void testStopsAfterMaxPages() throws Exception {
+        when(source.fetchTransactionPage(anyInt())).thenReturn(page(1));
+        when(database.mergeUpstream(anyList(), anyList())).thenReturn(new DatabaseController.MergeResult(0, 5));
+
+        UpstreamSync sync = new UpstreamSync(database, source, 0, 0, 5, mock(Logger.class));
+        sync.run();
+
+        verify(source, times(5)).fetchTransactionPage(anyInt());
+        assertEquals(4, sync.getLastPage());
+    }
+
+    @Test
+    void testFailedRunKeepsPositionAndLag() throws Exception {
+        when(source.fetchTransactionPage(7)).thenReturn(page(1));
+        when(source.fetchTransactionPage(8)).thenReturn(List.of());
+        when(database.mergeUpstream(anyList(), anyList())).thenReturn(null);
+        Logger log = mock(Logger.class);
+
+        long loaded = System.currentTimeMillis() - 600_000;
+        UpstreamSync sync = new UpstreamSync(database, source, 7, loaded, 20, log);
+        sync.run();
+
+        assertEquals(7, sync.getLastPage());
+        assertEquals(1, sync.getFailed());
+        assertEquals(0, sync.getSucceeded());
+        assertEquals(loaded, sync.getLastSyncMillis());
+        assertTrue(sync.getLagMillis() >= 600_000);
+        verify(log).warn(anyString(), any(Throwable.class));
+    }
+
+    @Test
+    void testFirstPageFailureFailsTheRunWithoutMerging() throws Exception {
+        when(source.fetchTransactionPage(0)).thenThrow(new IOException("connection refused"));
+
+        UpstreamSync sync = new UpstreamSync(database, source, 0, 0, 20, mock(Logger.class));
+        sync.run();
+
+        verifyNoInteractions(database);
+        assertEquals(1, sync.getFailed());
+    }
+
+    @Test
+    void testCollectWritesSyncMetrics() throws Exception {
+        UpstreamSync sync = new UpstreamSync(database, source, 153, 1_700_000_000_000L, 20, mock(Logger.class));
+        Metrics metrics = new Metrics();
+        metrics.register(sync);
+
+        String scrape = metrics.scrape();
+        assertTrue(scrape.contains("scotbank_upstream_sync_last_success_timestamp_seconds 1700000000"));
+        assertTrue(scrape.contains("scotbank_upstream_sync_page 153"));
+        assertTrue(scrape.contains("scotbank_upstream_sync_runs_total{outcome=\"failed\"} 0"));
+        assertTrue(scrape.contains("# TYPE scotbank_upstream_sync_lag_seconds gauge"));
+    }
+}